@@ -0,0 +1,333 @@
+package ac.robinson.chameleonnotifier;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+
+import com.jwetherell.motion_detection.source.FrameSource;
+import com.jwetherell.motion_detection.source.LumaFrame;
+
+import java.util.Collections;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A {@link FrameSource} that reads a camera through Camera2, without a preview surface. Frames arrive in an
+ * {@link ImageReader} at the smallest YUV_420_888 size that is large enough for analysis, and each is delivered as
+ * the Image's own Y plane buffer (with its row stride), so nothing is copied; the Image is closed when the frame is
+ * released. The reader is only closed once every frame has been released, so frames stay valid after {@link #stop()}.
+ * <p>
+ * Frames are delivered on the source's own background thread, rather than the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class Camera2FrameSource implements FrameSource, ImageReader.OnImageAvailableListener, LumaFrame.Owner {
+
+	private static final String TAG = "Camera2FrameSource";
+
+	private static final int MAX_IMAGES = 3; // one arriving, one waiting for analysis, one being analysed
+
+	private final CameraManager mCameraManager;
+	private final String mCameraId;
+	private final Size mSize;
+
+	private final LumaFrame[] mFrames = new LumaFrame[MAX_IMAGES];
+	private final Image[] mImages = new Image[MAX_IMAGES]; // the image each frame is reading from; null when free
+	private int mHeldCount; // guarded by this
+	private boolean mStopped; // guarded by this; only changed on the camera thread
+	private int mDroppedCount;
+
+	private volatile Listener mListener;
+	private HandlerThread mCameraThread;
+	private Handler mCameraHandler;
+	private ImageReader mImageReader; // closed (under this lock) only once stopped and every frame is released
+	private boolean mOpening; // only accessed on the camera thread, once started
+	private CameraDevice mCameraDevice; // only accessed on the camera thread
+	private CameraCaptureSession mCaptureSession; // only accessed on the camera thread
+
+	/**
+	 * Create a source for the first suitable camera facing the given direction. Cameras whose Camera2 support is only
+	 * at the legacy level are not used - Camera2 is emulated on top of the original API for these, so frames would be
+	 * copied an extra time, and the original API should be used directly instead.
+	 *
+	 * @param context       a context for accessing the camera service
+	 * @param front         whether to use a front-facing (rather than rear-facing) camera
+	 * @param minimumPixels the smallest number of pixels that frames must have for analysis
+	 * @return the source, or null if Camera2 is not available or no suitable camera was found
+	 */
+	@Nullable
+	static Camera2FrameSource create(@NonNull Context context, boolean front, int minimumPixels) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+			return null;
+		}
+		CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+		if (cameraManager == null) {
+			return null;
+		}
+		int facing = front ? CameraCharacteristics.LENS_FACING_FRONT : CameraCharacteristics.LENS_FACING_BACK;
+		try {
+			for (String cameraId : cameraManager.getCameraIdList()) {
+				CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+				Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+				Integer hardwareLevel = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+				StreamConfigurationMap configurationMap =
+						characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+				if (lensFacing == null || lensFacing != facing || hardwareLevel == null ||
+						hardwareLevel == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY ||
+						configurationMap == null) {
+					continue;
+				}
+				Size size = getAnalysisSize(configurationMap.getOutputSizes(ImageFormat.YUV_420_888), minimumPixels);
+				if (size != null) {
+					return new Camera2FrameSource(cameraManager, cameraId, size);
+				}
+			}
+		} catch (CameraAccessException | RuntimeException e) {
+			Log.d(TAG, "Unable to query Camera2 cameras: " + e.getMessage());
+		}
+		return null;
+	}
+
+	// the smallest size with at least minimumPixels pixels, or the largest size if none are large enough
+	@Nullable
+	private static Size getAnalysisSize(@Nullable Size[] sizes, int minimumPixels) {
+		if (sizes == null) {
+			return null;
+		}
+		Size smallestSuitable = null;
+		Size largest = null;
+		for (Size size : sizes) {
+			int pixels = size.getWidth() * size.getHeight();
+			if (pixels >= minimumPixels && (smallestSuitable == null ||
+					pixels < smallestSuitable.getWidth() * smallestSuitable.getHeight())) {
+				smallestSuitable = size;
+			}
+			if (largest == null || pixels > largest.getWidth() * largest.getHeight()) {
+				largest = size;
+			}
+		}
+		return smallestSuitable != null ? smallestSuitable : largest;
+	}
+
+	private Camera2FrameSource(CameraManager cameraManager, String cameraId, Size size) {
+		mCameraManager = cameraManager;
+		mCameraId = cameraId;
+		mSize = size;
+		for (int i = 0; i < MAX_IMAGES; i++) {
+			mFrames[i] = new LumaFrame(this);
+		}
+	}
+
+	/**
+	 * Open the camera and start delivering frames. Each source can only be started once.
+	 * {@inheritDoc}
+	 */
+	@SuppressLint("MissingPermission") // sources are only created once the camera permission has been granted
+	@Override
+	public void start(Listener listener) {
+		mListener = listener;
+		mCameraThread = new HandlerThread(TAG);
+		mCameraThread.start();
+		mCameraHandler = new Handler(mCameraThread.getLooper());
+		synchronized (this) {
+			mImageReader = ImageReader.newInstance(mSize.getWidth(), mSize.getHeight(), ImageFormat.YUV_420_888,
+					MAX_IMAGES);
+			mImageReader.setOnImageAvailableListener(this, mCameraHandler);
+		}
+		mOpening = true; // (any callbacks are delivered on the camera thread after this)
+		try {
+			mCameraManager.openCamera(mCameraId, mDeviceStateCallback, mCameraHandler);
+		} catch (CameraAccessException | RuntimeException e) {
+			Log.d(TAG, "Unable to open camera " + mCameraId + ": " + e.getMessage());
+			mOpening = false;
+		}
+	}
+
+	@Override
+	public void stop() {
+		mListener = null;
+		if (mCameraHandler == null) {
+			return; // never started
+		}
+		mCameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				closeCamera();
+				synchronized (Camera2FrameSource.this) {
+					mStopped = true;
+					if (mHeldCount == 0) {
+						closeImageReader(); // otherwise, this happens when the last held frame is released
+					}
+				}
+				if (mDroppedCount > 0) {
+					Log.d(TAG, "Dropped " + mDroppedCount + " frames while every image was held");
+				}
+				if (!mOpening) {
+					mCameraThread.quitSafely(); // otherwise, we wait to close the camera once it has opened
+				}
+			}
+		});
+	}
+
+	private synchronized boolean isStopped() {
+		return mStopped;
+	}
+
+	private void closeCamera() {
+		if (mCaptureSession != null) {
+			mCaptureSession.close();
+			mCaptureSession = null;
+		}
+		if (mCameraDevice != null) {
+			mCameraDevice.close();
+			mCameraDevice = null;
+		}
+	}
+
+	private void closeImageReader() {
+		if (mImageReader != null) {
+			mImageReader.close();
+			mImageReader = null;
+		}
+	}
+
+	@Override
+	public void onImageAvailable(ImageReader reader) {
+		Image image;
+		try {
+			image = reader.acquireNextImage();
+		} catch (IllegalStateException e) {
+			mDroppedCount += 1; // every image is held - the camera will deliver the newest once one is released
+			return;
+		}
+		if (image == null) {
+			return;
+		}
+
+		Listener listener = mListener;
+		LumaFrame frame = null;
+		if (listener != null) {
+			synchronized (this) {
+				for (int i = 0; i < MAX_IMAGES; i++) {
+					if (mImages[i] == null) {
+						mImages[i] = image;
+						mHeldCount += 1;
+						frame = mFrames[i];
+						break;
+					}
+				}
+			}
+		}
+		if (frame == null) {
+			image.close();
+			return;
+		}
+
+		// the Y plane of YUV_420_888 always has a pixel stride of 1, but rows may be padded
+		Image.Plane lumaPlane = image.getPlanes()[0];
+		frame.set(lumaPlane.getBuffer(), lumaPlane.getRowStride(), image.getWidth(), image.getHeight(),
+				image.getTimestamp() / 1000000);
+		listener.onFrame(frame);
+	}
+
+	@Override
+	public void release(LumaFrame frame) {
+		synchronized (this) {
+			for (int i = 0; i < MAX_IMAGES; i++) {
+				if (mFrames[i] == frame) {
+					if (mImages[i] != null) {
+						mImages[i].close();
+						mImages[i] = null;
+						mHeldCount -= 1;
+					}
+					break;
+				}
+			}
+			if (mStopped && mHeldCount == 0) {
+				closeImageReader();
+			}
+		}
+	}
+
+	private final CameraDevice.StateCallback mDeviceStateCallback = new CameraDevice.StateCallback() {
+		@Override
+		public void onOpened(@NonNull CameraDevice camera) {
+			mOpening = false;
+			if (isStopped()) {
+				camera.close(); // stopped before the camera finished opening
+				mCameraThread.quitSafely();
+				return;
+			}
+			mCameraDevice = camera;
+			try {
+				camera.createCaptureSession(Collections.singletonList(mImageReader.getSurface()),
+						mSessionStateCallback, mCameraHandler);
+			} catch (CameraAccessException | RuntimeException e) {
+				Log.d(TAG, "Unable to create capture session: " + e.getMessage());
+				closeCamera();
+			}
+		}
+
+		@Override
+		public void onDisconnected(@NonNull CameraDevice camera) {
+			onLost(camera);
+		}
+
+		@Override
+		public void onError(@NonNull CameraDevice camera, int error) {
+			Log.d(TAG, "Camera " + mCameraId + " error: " + error);
+			onLost(camera);
+		}
+
+		private void onLost(CameraDevice camera) {
+			mOpening = false;
+			camera.close();
+			if (mCameraDevice == camera) {
+				mCameraDevice = null;
+			}
+			if (isStopped()) {
+				mCameraThread.quitSafely();
+			}
+		}
+	};
+
+	private final CameraCaptureSession.StateCallback mSessionStateCallback = new CameraCaptureSession.StateCallback() {
+		@Override
+		public void onConfigured(@NonNull CameraCaptureSession session) {
+			if (mCameraDevice == null) {
+				session.close(); // the camera was closed while the session was being configured
+				return;
+			}
+			mCaptureSession = session;
+			try {
+				CaptureRequest.Builder requestBuilder =
+						mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+				requestBuilder.addTarget(mImageReader.getSurface());
+				session.setRepeatingRequest(requestBuilder.build(), null, mCameraHandler);
+			} catch (CameraAccessException | RuntimeException e) {
+				Log.d(TAG, "Unable to start capturing: " + e.getMessage());
+			}
+		}
+
+		@Override
+		public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+			Log.d(TAG, "Unable to configure capture session");
+			session.close();
+		}
+	};
+}
@@ -34,6 +34,7 @@ import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.util.Log;
@@ -53,9 +54,12 @@ import com.davemorrissey.labs.subscaleview.ImageSource;
 import com.davemorrissey.labs.subscaleview.ImageViewState;
 import com.davemorrissey.labs.subscaleview.SubsamplingScaleImageView;
 import com.jwetherell.motion_detection.SensorMotionActivity;
-import com.jwetherell.motion_detection.detection.IMotionDetection;
-import com.jwetherell.motion_detection.detection.RgbMotionDetection;
-import com.jwetherell.motion_detection.image.ImageProcessing;
+import com.jwetherell.motion_detection.detection.IMotionResultDetection;
+import com.jwetherell.motion_detection.detection.MotionResult;
+import com.jwetherell.motion_detection.detection.YuvLumaMotionDetection;
+import com.jwetherell.motion_detection.recording.FrameRecorder;
+import com.jwetherell.motion_detection.source.FrameSource;
+import com.jwetherell.motion_detection.source.LumaFrame;
 import com.michael.easydialog.EasyDialog;
 
 import org.opencv.android.OpenCVLoader;
@@ -63,15 +67,17 @@ import org.opencv.android.OpenCVLoader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import ac.robinson.chameleonnotifier.service.MonitorManager;
 import ac.robinson.chameleonnotifier.service.NotificationMonitorService;
 import ac.robinson.chameleonnotifier.view.CameraSurfaceView;
 import ac.robinson.chameleonnotifier.view.CircleImageButton;
+import ac.robinson.chameleonnotifier.view.LegacyCameraFrameSource;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.widget.Toolbar;
@@ -97,9 +103,11 @@ public class CameraActivity extends SensorMotionActivity {
 	private static final int CAMERA_PERMISSION_RESULT = 143; // "cam"
 	private static final int AUTO_FOCUS_INTERVAL = 1000; // milliseconds
 
-	private Camera mCamera;
+	private CameraThread mCameraThread; // the original camera API is only ever used on this thread
+	private volatile Camera mCamera; // (set on the main thread once opened; also read by auto focus callbacks)
+	private boolean mIsOpeningCamera;
 	private boolean mHasRequestedCameraPermission;
-	private boolean mIsPreviewing;
+	private volatile boolean mIsPreviewing;
 	private boolean mIsUsingFrontCamera;
 	private int mInitialBrightnessMode;
 	private int mInitialBrightnessLevel;
@@ -125,6 +133,7 @@ public class CameraActivity extends SensorMotionActivity {
 	private int mFacebookNotificationCount = 0;
 	private int mSMSNotificationCount = 0;
 	private int mWhatsAppNotificationCount = 0;
+	private volatile boolean mHasNotifications; // any count above is non-zero (read on the camera thread)
 	private long mLastNotificationTime = 0;
 	private String mFacebookNotificationTitle;
 	private String mFacebookNotificationMessage;
@@ -137,9 +146,33 @@ public class CameraActivity extends SensorMotionActivity {
 	private PendingIntent mWhatsAppPendingIntent;
 	private EasyDialog mCurrentNotificationDialog;
 
-	private static final AtomicBoolean sIsProcessingMotionDetection = new AtomicBoolean(false);
-	private static long sMotionDetectionReferenceTime = 0;
-	private static final IMotionDetection sMotionDetector = new RgbMotionDetection();
+	private static final int MOTION_DETECTION_MIN_PIXELS = 160 * 120; // frames are downsampled towards this size
+	private static final int MOTION_DETECTION_MIN_CHANGED_BLOCKS = 2; // fewer changed blocks is just a flicker
+	private static final float MOTION_DETECTION_LARGE_FRACTION = 0.2f; // react sooner when this much has changed
+	private static final int MOTION_DETECTION_INTERVAL = 2500; // minimum milliseconds between motion events
+	private static final int MOTION_DETECTION_LARGE_INTERVAL = 1500; // as above, but for large movements
+	private static final boolean USE_CAMERA2_FRAME_SOURCE = true; // read the front camera directly where supported
+	private FrameSource mFrameSource; // the camera's frames, when it is being used for motion detection
+	private MotionDetectionSession mMotionDetectionSession; // one per camera, so we never compare against a stale frame
+	private final Handler mMotionDetectedHandler = new Handler();
+	private static final int MOTION_SAMPLE_ACTIVE_INTERVAL = 66; // analyse up to ~15 frames per second after motion...
+	private static final int MOTION_SAMPLE_IDLE_INTERVAL = 1000; // ...but only one per second when nothing is moving
+	private static final int MOTION_SAMPLE_HOLD_DURATION = 3000; // how long to stay at the active rate after motion
+	private static final int MOTION_SAMPLE_DECAY_DURATION = 5000; // how long to take to slow back to the idle rate
+	private final CameraDutyCycle mCameraDutyCycle = new CameraDutyCycle(new CameraDutyCycle.Callback() {
+		@Override
+		public void onStartCamera() {
+			setupCamera(true); // front camera for movement detection
+		}
+
+		@Override
+		public void onStopCamera() {
+			releaseCamera();
+		}
+	});
+	private static final boolean RECORD_MOTION_FRAMES = false; // for debugging: save analysed frames for offline replay
+	private static final long RECORD_MOTION_FRAMES_MAX_BYTES = 256 * 1024 * 1024; // stop recording at this size
+	private FrameRecorder mFrameRecorder; // only used when RECORD_MOTION_FRAMES is true
 
 	private static final int BUTTON_ANIMATION_DURATION = 250; // animation (and removal) time for notification buttons
 	private CircleImageButton mFacebookButton;
@@ -176,6 +209,8 @@ public class CameraActivity extends SensorMotionActivity {
 			return;
 		}
 
+		mCameraThread = new CameraThread();
+
 		Toolbar toolbar = findViewById(R.id.toolbar);
 		setSupportActionBar(toolbar);
 		ActionBar actionBar = getSupportActionBar();
@@ -217,9 +252,18 @@ public class CameraActivity extends SensorMotionActivity {
 		mCurrentMode = Mode.CAMERA;
 	}
 
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		if (mCameraThread != null) {
+			mCameraThread.quit(); // any camera released in onPause is still released first
+		}
+	}
+
 	@Override
 	public void onPause() {
 		super.onPause();
+		mCameraDutyCycle.setEnabled(false); // pending notifications are kept, and restart the camera on resume
 		releaseCamera();
 
 		LocalBroadcastManager localBroadcastManager = LocalBroadcastManager.getInstance(CameraActivity.this);
@@ -252,7 +296,7 @@ public class CameraActivity extends SensorMotionActivity {
 
 			case EVENTS:
 				if (checkCameraPermissions()) {
-					setupCamera(true);
+					mCameraDutyCycle.setEnabled(true); // the camera only runs while notifications are pending
 				}
 				Intent startNotificationsIntent = new Intent(MonitorManager.START_MANAGING_NOTIFICATIONS);
 				localBroadcastManager.sendBroadcast(startNotificationsIntent);
@@ -411,6 +455,8 @@ public class CameraActivity extends SensorMotionActivity {
 				mFacebookNotificationCount = 0;
 				mSMSNotificationCount = 0;
 				mWhatsAppNotificationCount = 0;
+				mHasNotifications = false;
+				mCameraDutyCycle.reset();
 				mFacebookNotificationTitle = null;
 				mFacebookNotificationMessage = null;
 				mFacebookPendingIntent = null;
@@ -431,21 +477,25 @@ public class CameraActivity extends SensorMotionActivity {
 				if (mCamera == null || mIsUsingFrontCamera) {
 					releaseCamera(); // to switch back from front camera
 					setupCamera(false);
+				} else if (!mIsPreviewing) {
+					final Camera camera = mCamera;
+					mCameraThread.getHandler().post(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								camera.startPreview();
+								camera.autoFocus(mAutoFocusCallback);
+							} catch (RuntimeException ignored) {
+								// if they manage to click back and take a photo at roughly the same time, the photo
+								// is still saved, and replaces the preview once it is ready
+							}
+						}
+					});
+					mIsPreviewing = true;
 				}
 
-				if (mCamera != null) {
+				if (mCamera != null || mIsOpeningCamera) {
 					// reset images and take another photo
-					try {
-						if (!mIsPreviewing) {
-							mCamera.startPreview();
-							mCamera.autoFocus(mAutoFocusCallback);
-							mIsPreviewing = true;
-						}
-					} catch (RuntimeException e) {
-						// if they manage to click back and take a photo at roughly the same time, choose photo option
-						return;
-					}
-
 					mOriginalImage = null;
 					for (int i = 0, n = mNotificationImages.length; i < n; i++) {
 						mNotificationImages[i] = null;
@@ -638,7 +688,13 @@ public class CameraActivity extends SensorMotionActivity {
 					mTakePhotoButton.setVisibility(View.GONE);
 					// TODO: the change of view size when we hide the action bar sometimes causes initial and modified
 					// TODO: images to be different dimensions
-					mCamera.takePicture(null, null, mPhotoCallback);
+					final Camera camera = mCamera;
+					mCameraThread.getHandler().post(new Runnable() {
+						@Override
+						public void run() {
+							camera.takePicture(null, null, mPhotoCallback);
+						}
+					});
 					mIsPreviewing = false;
 				}
 				break;
@@ -707,11 +763,17 @@ public class CameraActivity extends SensorMotionActivity {
 
 	private final Camera.PictureCallback mPhotoCallback = new Camera.PictureCallback() {
 		@Override
-		public void onPictureTaken(byte[] data, Camera camera) {
+		public void onPictureTaken(final byte[] data, Camera camera) {
+			// called on the camera's thread, but the photo must be saved from the main thread
 			Camera.Parameters parameters = camera.getParameters();
-			Camera.Size size = parameters.getPictureSize();
-			int format = parameters.getPictureFormat();
-			new SavePhotoTask(mImageCacheFile, size, format).execute(data);
+			final Camera.Size size = parameters.getPictureSize();
+			final int format = parameters.getPictureFormat();
+			runOnUiThread(new Runnable() {
+				@Override
+				public void run() {
+					new SavePhotoTask(mImageCacheFile, size, format).execute(data);
+				}
+			});
 		}
 	};
 
@@ -797,8 +859,10 @@ public class CameraActivity extends SensorMotionActivity {
 				mZoomableImageView.setVisibility(View.VISIBLE);
 				mImageCustomisationControls.setVisibility(View.VISIBLE);
 
+				// the front camera is only opened for movement detection once there is a notification to reveal
+				// (releasing the rear camera also tells the duty cycle that no camera is running)
 				releaseCamera();
-				setupCamera(true); // front camera for movement detection
+				mCameraDutyCycle.setEnabled(true);
 
 				LocalBroadcastManager localBroadcastManager = LocalBroadcastManager.getInstance(CameraActivity.this);
 				Intent startNotificationsIntent = new Intent(MonitorManager.START_MANAGING_NOTIFICATIONS);
@@ -926,72 +990,117 @@ public class CameraActivity extends SensorMotionActivity {
 		return options;
 	}
 
-	private final Camera.PreviewCallback mPreviewCallback = new Camera.PreviewCallback() {
-		@Override
-		public void onPreviewFrame(byte[] data, Camera camera) {
-			// only analyse motion if we actually have events
-			if (!getIsInMotion() && mFacebookNotificationCount > 0 || mSMSNotificationCount > 0 ||
-					mWhatsAppNotificationCount > 0) {
-				Camera.Size size = camera.getParameters().getPreviewSize();
-				new DetectionTask(data, size.width, size.height).execute();
+	private void setupCamera(boolean preferFront) {
+		if (preferFront && USE_CAMERA2_FRAME_SOURCE) {
+			// the front camera is only used for motion detection, and is never displayed - where possible we read its
+			// frames directly with Camera2 (without a preview surface); otherwise we use the original API as before
+			FrameSource frameSource = Camera2FrameSource.create(CameraActivity.this, true, MOTION_DETECTION_MIN_PIXELS);
+			if (frameSource != null) {
+				mIsUsingFrontCamera = true;
+				startMotionDetection(frameSource);
+				return;
 			}
 		}
-	};
 
-	private void setupCamera(boolean preferFront) {
-		CameraUtilities.CameraConfiguration cameraConfiguration = new CameraUtilities.CameraConfiguration();
-		mCamera = CameraUtilities.initialiseCamera(preferFront, cameraConfiguration);
-		if (mCamera != null) {
-			int screenRotation = CameraUtilities.getScreenRotationDegrees(getWindowManager());
-			int displayOrientation = CameraUtilities.getPreviewOrientationDegrees(screenRotation,
-					cameraConfiguration.cameraOrientationDegrees, cameraConfiguration.usingFrontCamera);
-			mPreviewFrame.addView(new CameraSurfaceView(CameraActivity.this, getWindowManager().getDefaultDisplay(), mCamera,
-					displayOrientation, cameraConfiguration.cameraOrientationDegrees, mAutoFocusCallback,
-					cameraConfiguration.usingFrontCamera ? mPreviewCallback : null, cameraConfiguration.usingFrontCamera));
-			mIsUsingFrontCamera = cameraConfiguration.usingFrontCamera; // TODO: could end up motion detecting rear cam
-			mIsPreviewing = true;
+		// opening the camera can take a long time, so it is done on the camera thread, which then receives all of the
+		// camera's callbacks (including preview frames) rather than the main thread
+		mIsOpeningCamera = true;
+		mCameraThread.open(preferFront, new CameraThread.OpenCallback() {
+			@Override
+			public void onCameraOpened(@Nullable Camera camera,
+									   @NonNull CameraUtilities.CameraConfiguration cameraConfiguration) {
+				mIsOpeningCamera = false;
+				mCamera = camera;
+				if (mCamera != null) {
+					int screenRotation = CameraUtilities.getScreenRotationDegrees(getWindowManager());
+					int displayOrientation = CameraUtilities.getPreviewOrientationDegrees(screenRotation,
+							cameraConfiguration.cameraOrientationDegrees, cameraConfiguration.usingFrontCamera);
+					LegacyCameraFrameSource frameSource = cameraConfiguration.usingFrontCamera ?
+							new LegacyCameraFrameSource(mCameraThread.getHandler()) : null;
+					mPreviewFrame.addView(new CameraSurfaceView(CameraActivity.this,
+							getWindowManager().getDefaultDisplay(), mCamera, mCameraThread.getHandler(),
+							displayOrientation, cameraConfiguration.cameraOrientationDegrees, mAutoFocusCallback,
+							frameSource, cameraConfiguration.usingFrontCamera));
+					// TODO: could end up motion detecting rear cam
+					mIsUsingFrontCamera = cameraConfiguration.usingFrontCamera;
+					if (frameSource != null) {
+						startMotionDetection(frameSource);
+					}
+					mIsPreviewing = true;
+				} else {
+					mCameraDutyCycle.onCameraStopped(); // so that the next notification tries to open it again
+				}
+			}
+		});
+	}
+
+	private void startMotionDetection(FrameSource frameSource) {
+		if (RECORD_MOTION_FRAMES) {
+			try {
+				mFrameRecorder = new FrameRecorder(new File(getExternalFilesDir(null), "motion-frames.nv21"),
+						RECORD_MOTION_FRAMES_MAX_BYTES);
+			} catch (IOException e) {
+				Log.d(TAG, "Unable to start recording motion detection frames");
+			}
 		}
+		mMotionDetectionSession = new MotionDetectionSession(new YuvLumaMotionDetection(MOTION_DETECTION_MIN_PIXELS),
+				mFrameRecorder);
+		mFrameSource = frameSource;
+		mFrameSource.start(mMotionDetectionSession);
 	}
 
 	private void releaseCamera() {
 		mIsPreviewing = false;
-		mAutoFocusHandler.removeCallbacks(mAutoFocusRunnable);
-		if (mCamera != null) {
-			try {
-				mCamera.cancelAutoFocus();
-			} catch (RuntimeException e) { // have had app store reports of this causing a RuntimeException
+		if (mFrameSource != null) {
+			mFrameSource.stop(); // frames still held (e.g., being analysed) remain valid until they are released
+			mFrameSource = null;
+		}
+		mCameraThread.getHandler().removeCallbacks(mAutoFocusRunnable);
+		for (int i = 0; i < mPreviewFrame.getChildCount(); i++) {
+			View child = mPreviewFrame.getChildAt(i);
+			if (child instanceof CameraSurfaceView) {
+				((CameraSurfaceView) child).detachCamera(); // so removing the view below doesn't wait for the release
 			}
-			mCamera.stopPreview();
-			mCamera.setPreviewCallback(null);
+		}
+		mCameraThread.release(mCamera); // (after the frame source has stopped) - also cancels any camera being opened
+		mCamera = null;
+		mIsOpeningCamera = false;
+		if (mMotionDetectionSession != null) {
+			mMotionDetectionSession.stop(); // any frame still being analysed finishes in the background
+			mMotionDetectionSession = null;
+		}
+		if (mFrameRecorder != null) {
 			try {
-				mCamera.setPreviewDisplay(null);
-			} catch (Throwable ignored) {
+				mFrameRecorder.close(); // any detection still running will just skip recording its frame
+			} catch (IOException e) {
+				Log.d(TAG, "Unable to finish recording motion detection frames");
 			}
-			mCamera.release();
-			mCamera = null;
+			mFrameRecorder = null;
 		}
 		mPreviewFrame.removeAllViews();
+		mCameraDutyCycle.onCameraStopped(); // keep the duty cycle in sync, whichever path released the camera
 	}
 
 	private final Runnable mAutoFocusRunnable = new Runnable() {
 		@Override
 		public void run() {
-			if (mIsPreviewing) {
+			Camera camera = mCamera;
+			if (mIsPreviewing && camera != null) {
 				try {
-					mCamera.autoFocus(mAutoFocusCallback);
+					camera.autoFocus(mAutoFocusCallback);
 				} catch (RuntimeException ignored) {
 				}
 			}
 		}
 	};
 
-	// simulate continuous auto-focus
-	private final Handler mAutoFocusHandler = new Handler();
+	// simulate continuous auto-focus (callbacks are delivered on the camera thread, so we just repeat them there)
 	private final AutoFocusCallback mAutoFocusCallback = new AutoFocusCallback() {
 		@Override
 		public void onAutoFocus(boolean success, Camera camera) {
-			mAutoFocusHandler.removeCallbacks(mAutoFocusRunnable);
-			mAutoFocusHandler.postDelayed(mAutoFocusRunnable, AUTO_FOCUS_INTERVAL);
+			Handler cameraHandler = mCameraThread.getHandler();
+			cameraHandler.removeCallbacks(mAutoFocusRunnable);
+			cameraHandler.postDelayed(mAutoFocusRunnable, AUTO_FOCUS_INTERVAL);
 		}
 	};
 
@@ -1080,6 +1189,9 @@ public class CameraActivity extends SensorMotionActivity {
 									.setTouchOutsideDismiss(true)
 									.setMatchParent(false)
 									.show();
+
+							// every pending notification is now shown, so motion can no longer reveal anything new
+							mCameraDutyCycle.onNotificationsRevealed();
 						}
 						break;
 
@@ -1405,6 +1517,7 @@ public class CameraActivity extends SensorMotionActivity {
 					mFacebookNotificationMessage = notificationMessage;
 					mFacebookPendingIntent = notificationIntent;
 					showNotification(0);
+					mCameraDutyCycle.onNotificationReceived();
 					// Log.d(TAG, "Facebook event received");
 					break;
 
@@ -1414,6 +1527,7 @@ public class CameraActivity extends SensorMotionActivity {
 					mSMSNotificationMessage = notificationMessage;
 					mSMSPendingIntent = notificationIntent;
 					showNotification(1);
+					mCameraDutyCycle.onNotificationReceived();
 					// Log.d(TAG, "SMS event received");
 					break;
 
@@ -1423,12 +1537,15 @@ public class CameraActivity extends SensorMotionActivity {
 					mWhatsAppNotificationMessage = notificationMessage;
 					mWhatsAppPendingIntent = notificationIntent;
 					showNotification(2);
+					mCameraDutyCycle.onNotificationReceived();
 					// Log.d(TAG, "WhatsApp event received");
 					break;
 
 				default:
 					break;
 			}
+			mHasNotifications = mFacebookNotificationCount > 0 || mSMSNotificationCount > 0 ||
+					mWhatsAppNotificationCount > 0;
 		}
 	};
 
@@ -1463,81 +1580,136 @@ public class CameraActivity extends SensorMotionActivity {
 		}
 	}
 
-	private class DetectionTask extends AsyncTask<Void, Void, Boolean> {
-
-		private final byte[] mData;
-		private final int mWidth;
-		private final int mHeight;
+	// one per camera session: frames arrive on the frame source's thread, and are analysed on the session's own worker
+	private class MotionDetectionSession implements FrameSource.Listener, MotionDetectionWorker.FrameHandler {
+
+		private final IMotionResultDetection mDetector;
+		private final MotionResult mResult = new MotionResult(); // reused for every frame of this session
+		private final FrameRecorder mRecorder;
+		private final MotionDetectionWorker mWorker;
+		// each session samples from the idle rate, and a stopped session's worker can't change a new session's rate
+		private final FrameSampleScheduler mFrameScheduler = new FrameSampleScheduler(MOTION_SAMPLE_ACTIVE_INTERVAL,
+				MOTION_SAMPLE_IDLE_INTERVAL, MOTION_SAMPLE_HOLD_DURATION, MOTION_SAMPLE_DECAY_DURATION);
+		private long mMotionReferenceTime = 0; // only accessed on the worker
+		private volatile boolean mStopped;
+
+		MotionDetectionSession(IMotionResultDetection detector, FrameRecorder recorder) {
+			this.mDetector = detector;
+			this.mRecorder = recorder;
+			this.mWorker = new MotionDetectionWorker(this);
+			this.mWorker.start();
+		}
 
-		DetectionTask(byte[] data, int width, int height) {
-			this.mData = data;
-			this.mWidth = width;
-			this.mHeight = height;
+		// must be called on the main thread - no motion events from this session are handled after it returns
+		void stop() {
+			mStopped = true;
+			mWorker.quit();
+			mMotionDetectedHandler.removeCallbacks(mSessionMotionDetectedRunnable);
 		}
 
+		// the worker can still be finishing a frame when the session is stopped, so it might post after stop() has
+		// removed pending callbacks - checking again here, on the main thread, means a stopped session never shows
+		private final Runnable mSessionMotionDetectedRunnable = new Runnable() {
+			@Override
+			public void run() {
+				if (!mStopped) {
+					mMotionDetectedRunnable.run();
+				}
+			}
+		};
+
 		@Override
-		protected Boolean doInBackground(Void... params) {
-			if (!sIsProcessingMotionDetection.compareAndSet(false, true)) {
-				return Boolean.FALSE;
+		public void onFrame(LumaFrame frame) {
+			// only analyse motion if we actually have events
+			if (!getIsInMotion() && mHasNotifications) {
+				// decide whether this frame is worth analysing before doing any work on it, then hand it to the
+				// detection worker, replacing any frame that it has not yet started on (so analysis is never more than
+				// a frame behind) - the worker releases this frame, and we release the one it replaced
+				if (mFrameScheduler.shouldAnalyse(SystemClock.elapsedRealtime())) {
+					LumaFrame replaced = mWorker.offer(frame);
+					if (replaced != null) {
+						replaced.release();
+					}
+					return;
+				}
 			}
+			frame.release();
+		}
+
+		@Override
+		public void analyseFrame(LumaFrame frame) {
 			try {
-				// avoid analysing frames multiple times - 2.5 second delay between motion events
-				int[] img = ImageProcessing.decodeYUV420SPtoRGB(mData, mWidth, mHeight);
-				if (sMotionDetector.detect(img, mWidth, mHeight)) {
-					// TODO: improve (to save battery)
+				ByteBuffer luma = frame.getPlane();
+				// (only frames from the original camera API are whole NV21 images that can be recorded)
+				if (mRecorder != null && luma.hasArray()) {
+					try {
+						mRecorder.record(luma.array(), frame.getWidth(), frame.getHeight(), frame.getTimestamp());
+					} catch (IOException e) {
+						Log.d(TAG, "Unable to record motion detection frame");
+					}
+				}
+
+				// avoid analysing frames multiple times - 2.5 second delay between motion events (less for large ones)
+				// the detector compares the frame's luma plane directly, at a fixed analysis resolution
+				boolean motionDetected =
+						mDetector.detect(luma, frame.getRowStride(), frame.getWidth(), frame.getHeight(), mResult) &&
+								mResult.getChangedBlocks() >= MOTION_DETECTION_MIN_CHANGED_BLOCKS;
+				mFrameScheduler.onResult(motionDetected, SystemClock.elapsedRealtime()); // sample faster after motion
+				if (motionDetected) {
 					long now = System.currentTimeMillis();
-					if (now > (sMotionDetectionReferenceTime + 2500)) {
-						sMotionDetectionReferenceTime = now;
-						return Boolean.TRUE;
+					long interval = mResult.getChangedFraction() >= MOTION_DETECTION_LARGE_FRACTION ?
+							MOTION_DETECTION_LARGE_INTERVAL : MOTION_DETECTION_INTERVAL;
+					if (now > (mMotionReferenceTime + interval) && !mStopped) {
+						mMotionReferenceTime = now;
+						mMotionDetectedHandler.post(mSessionMotionDetectedRunnable);
 					}
 				}
 			} catch (Exception ignored) {
 			} finally {
-				sIsProcessingMotionDetection.set(false);
+				frame.release(); // the detector and recorder keep their own copies, so the source can reuse its memory
 			}
-			return Boolean.FALSE;
 		}
+	}
 
+	private final Runnable mMotionDetectedRunnable = new Runnable() {
 		@Override
-		protected void onPostExecute(Boolean motionDetected) {
-			if (motionDetected) {
-				// Log.d(TAG, "Camera motion detected");
-				// TODO: handle concurrent notifications better - this is a hacky way to stop them overlapping
+		public void run() {
+			// Log.d(TAG, "Camera motion detected");
+			// TODO: handle concurrent notifications better - this is a hacky way to stop them overlapping
+			if (mFacebookNotificationCount > 0) {
+				showNotification(0);
+			}
+			if (mSMSNotificationCount > 0) {
 				if (mFacebookNotificationCount > 0) {
-					showNotification(0);
-				}
-				if (mSMSNotificationCount > 0) {
-					if (mFacebookNotificationCount > 0) {
-						new Handler().postDelayed(new Runnable() {
-							@Override
-							public void run() {
-								showNotification(1);
-							}
-						}, Math.round(IMAGE_ANIMATION_DURATION * IMAGE_ANIMATION_SCALE));
-					} else {
-						showNotification(1);
-					}
+					new Handler().postDelayed(new Runnable() {
+						@Override
+						public void run() {
+							showNotification(1);
+						}
+					}, Math.round(IMAGE_ANIMATION_DURATION * IMAGE_ANIMATION_SCALE));
+				} else {
+					showNotification(1);
 				}
-				if (mWhatsAppNotificationCount > 0) {
-					if (mFacebookNotificationCount > 0 && mSMSNotificationCount > 0) {
-						new Handler().postDelayed(new Runnable() {
-							@Override
-							public void run() {
-								showNotification(2);
-							}
-						}, 2L * Math.round(IMAGE_ANIMATION_DURATION * IMAGE_ANIMATION_SCALE));
-					} else if (mFacebookNotificationCount > 0 || mSMSNotificationCount > 0) {
-						new Handler().postDelayed(new Runnable() {
-							@Override
-							public void run() {
-								showNotification(2);
-							}
-						}, Math.round(IMAGE_ANIMATION_DURATION * IMAGE_ANIMATION_SCALE));
-					} else {
-						showNotification(2);
-					}
+			}
+			if (mWhatsAppNotificationCount > 0) {
+				if (mFacebookNotificationCount > 0 && mSMSNotificationCount > 0) {
+					new Handler().postDelayed(new Runnable() {
+						@Override
+						public void run() {
+							showNotification(2);
+						}
+					}, 2L * Math.round(IMAGE_ANIMATION_DURATION * IMAGE_ANIMATION_SCALE));
+				} else if (mFacebookNotificationCount > 0 || mSMSNotificationCount > 0) {
+					new Handler().postDelayed(new Runnable() {
+						@Override
+						public void run() {
+							showNotification(2);
+						}
+					}, Math.round(IMAGE_ANIMATION_DURATION * IMAGE_ANIMATION_SCALE));
+				} else {
+					showNotification(2);
 				}
 			}
 		}
-	}
+	};
 }
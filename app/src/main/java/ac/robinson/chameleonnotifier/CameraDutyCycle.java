@@ -0,0 +1,102 @@
+package ac.robinson.chameleonnotifier;
+
+import android.util.Log;
+
+/**
+ * Decides when the front camera should be running for motion detection. Detecting motion only changes what the user
+ * sees when there is a notification to draw their attention to, so the camera is kept closed until a notification
+ * arrives, and closed again as soon as every pending notification has been revealed (i.e., the user has opened them).
+ * <p>
+ * All methods must be called on the main thread; the callback is also called on the main thread.
+ */
+class CameraDutyCycle {
+
+	interface Callback {
+		/**
+		 * Open the camera and start detecting motion.
+		 */
+		void onStartCamera();
+
+		/**
+		 * Stop detecting motion and close the camera.
+		 */
+		void onStopCamera();
+	}
+
+	private static final String TAG = "CameraDutyCycle";
+
+	private final Callback mCallback;
+	private boolean mEnabled; // whether the camera may be used at all (i.e., resumed, in events mode, with permission)
+	private int mPendingCount; // notifications received but not yet revealed
+	private boolean mIsCameraRunning;
+
+	/**
+	 * @param callback called whenever the camera needs to be started or stopped
+	 */
+	CameraDutyCycle(Callback callback) {
+		mCallback = callback;
+	}
+
+	/**
+	 * Allow (or prevent) the camera being started - pending notifications are kept while disabled, so the camera is
+	 * started again immediately when re-enabled if any are still waiting to be revealed.
+	 *
+	 * @param enabled whether the camera may be used
+	 */
+	void setEnabled(boolean enabled) {
+		mEnabled = enabled;
+		update();
+	}
+
+	/**
+	 * Record that a notification has been received, starting the camera if it is not already running.
+	 */
+	void onNotificationReceived() {
+		mPendingCount += 1;
+		update();
+	}
+
+	/**
+	 * Record that every pending notification has been revealed to the user, stopping the camera until the next one.
+	 */
+	void onNotificationsRevealed() {
+		mPendingCount = 0;
+		update();
+	}
+
+	/**
+	 * Disable the camera and forget any pending notifications (e.g., when leaving events mode).
+	 */
+	void reset() {
+		mEnabled = false;
+		mPendingCount = 0;
+		update();
+	}
+
+	/**
+	 * Record that the camera has been stopped other than through {@link Callback#onStopCamera()} (e.g., released to
+	 * switch cameras, or because it failed to open). If it is still needed it is not restarted straight away, but on
+	 * the next change that needs it (e.g., a new notification, or being re-enabled).
+	 */
+	void onCameraStopped() {
+		if (mIsCameraRunning) {
+			Log.d(TAG, "Camera stopped externally");
+			mIsCameraRunning = false;
+		}
+	}
+
+	private void update() {
+		boolean cameraNeeded = mEnabled && mPendingCount > 0;
+		if (cameraNeeded == mIsCameraRunning) {
+			return;
+		}
+		mIsCameraRunning = cameraNeeded;
+		if (cameraNeeded) {
+			Log.d(TAG, "Starting camera for " + mPendingCount + " pending notification(s)");
+			mCallback.onStartCamera();
+		} else {
+			Log.d(TAG, "Stopping camera - " + (mEnabled ? "all notifications revealed" : "disabled"));
+			mCallback.onStopCamera();
+		}
+	}
+}
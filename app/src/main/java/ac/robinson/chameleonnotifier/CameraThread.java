@@ -0,0 +1,121 @@
+package ac.robinson.chameleonnotifier;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A dedicated thread for cameras using the original {@link Camera} API. A camera delivers all of its callbacks (preview
+ * frames, auto focus, photos) on the looper of the thread that opened it, so opening it here rather than on the main
+ * thread keeps frame delivery away from rendering and touch handling, and the (often slow) open and release calls no
+ * longer block the UI. Every other call to a camera opened by this thread should be made through {@link #getHandler()}.
+ * <p>
+ * Requests are handled in order, so a camera that is released and then opened again is always released first.
+ * {@link #open}, {@link #release} and {@link #quit} must be called on the main thread.
+ */
+class CameraThread {
+
+	interface OpenCallback {
+		/**
+		 * Called on the main thread once a camera has been opened, unless the request was cancelled by
+		 * {@link #release} in the meantime (in which case the camera is released again without any callback).
+		 *
+		 * @param camera        the camera, or null if no camera could be opened
+		 * @param configuration the camera's configuration
+		 */
+		void onCameraOpened(@Nullable Camera camera, @NonNull CameraUtilities.CameraConfiguration configuration);
+	}
+
+	private static final String TAG = "CameraThread";
+
+	private final HandlerThread mThread;
+	private final Handler mHandler;
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+	private int mRequestCount; // only accessed on the main thread; incremented to cancel any open request in progress
+
+	CameraThread() {
+		mThread = new HandlerThread(TAG);
+		mThread.start();
+		mHandler = new Handler(mThread.getLooper());
+	}
+
+	/**
+	 * @return a handler for the camera thread, on which every call to a camera opened by this thread should be made
+	 */
+	Handler getHandler() {
+		return mHandler;
+	}
+
+	/**
+	 * Open a camera in the background, and report the result on the main thread.
+	 *
+	 * @param preferFront whether to prefer a front-facing camera (the other camera is used if there isn't one)
+	 * @param callback    called on the main thread once the camera has been opened (or has failed to open)
+	 */
+	void open(final boolean preferFront, @NonNull final OpenCallback callback) {
+		final int request = ++mRequestCount;
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				final CameraUtilities.CameraConfiguration configuration = new CameraUtilities.CameraConfiguration();
+				final Camera camera = CameraUtilities.initialiseCamera(preferFront, configuration);
+				mMainHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (request != mRequestCount) {
+							releaseCamera(camera); // released (or reopened) before this request had finished
+							return;
+						}
+						callback.onCameraOpened(camera, configuration);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Stop and release a camera in the background, and cancel any open request that has not yet completed.
+	 *
+	 * @param camera a camera opened by this thread, or null to just cancel any open request
+	 */
+	void release(@Nullable Camera camera) {
+		mRequestCount += 1;
+		releaseCamera(camera);
+	}
+
+	private void releaseCamera(@Nullable final Camera camera) {
+		if (camera == null) {
+			return;
+		}
+		Runnable releaseRunnable = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					camera.cancelAutoFocus();
+				} catch (RuntimeException e) { // have had app store reports of this causing a RuntimeException
+				}
+				camera.stopPreview();
+				camera.setPreviewCallback(null);
+				try {
+					camera.setPreviewDisplay(null);
+				} catch (Throwable ignored) {
+				}
+				camera.release();
+			}
+		};
+		if (!mHandler.post(releaseRunnable)) {
+			releaseRunnable.run(); // the thread has already quit, so nothing else can be using the camera
+		}
+	}
+
+	/**
+	 * Stop the thread once every request that has already been made (e.g., releasing a camera) has been handled.
+	 */
+	void quit() {
+		mThread.quitSafely();
+	}
+}
@@ -0,0 +1,78 @@
+package ac.robinson.chameleonnotifier;
+
+/**
+ * Decides which camera preview frames are worth analysing for motion, based on recent detection results. While the
+ * scene is static, frames are sampled at a low idle rate; once motion is seen, every frame up to the active rate is
+ * analysed for a while, after which the interval between frames decays linearly back to the idle rate.
+ * <p>
+ * {@link #shouldAnalyse(long)} is cheap enough to call from the preview callback before any work is done on a frame.
+ * Both methods may be called from any thread.
+ */
+class FrameSampleScheduler {
+
+	private final long mActiveInterval;
+	private final long mIdleInterval;
+	private final long mHoldDuration;
+	private final long mDecayDuration;
+
+	private long mLastMotionTime = Long.MIN_VALUE / 2; // start idle (halved so subtraction cannot overflow)
+	private long mNextFrameTime = 0;
+
+	/**
+	 * @param activeInterval minimum milliseconds between analysed frames just after motion
+	 * @param idleInterval   milliseconds between analysed frames when nothing has moved for a while
+	 * @param holdDuration   milliseconds to stay at the active rate after the last motion
+	 * @param decayDuration  milliseconds over which to slow from the active rate to the idle rate
+	 */
+	FrameSampleScheduler(long activeInterval, long idleInterval, long holdDuration, long decayDuration) {
+		if (activeInterval < 0 || idleInterval < activeInterval || holdDuration < 0 || decayDuration < 0) {
+			throw new IllegalArgumentException("Invalid scheduler bounds");
+		}
+		mActiveInterval = activeInterval;
+		mIdleInterval = idleInterval;
+		mHoldDuration = holdDuration;
+		mDecayDuration = decayDuration;
+	}
+
+	/**
+	 * @param now the current time, in milliseconds (e.g., from SystemClock.elapsedRealtime())
+	 * @return the current interval between analysed frames
+	 */
+	synchronized long getInterval(long now) {
+		long sinceMotion = now - mLastMotionTime - mHoldDuration;
+		if (sinceMotion <= 0) {
+			return mActiveInterval;
+		} else if (sinceMotion >= mDecayDuration) {
+			return mIdleInterval;
+		}
+		return mActiveInterval + ((mIdleInterval - mActiveInterval) * sinceMotion) / mDecayDuration;
+	}
+
+	/**
+	 * Check whether a frame arriving now should be analysed. If so, the next frame will not be analysed until the
+	 * current interval has passed.
+	 *
+	 * @param now the current time, in milliseconds (e.g., from SystemClock.elapsedRealtime())
+	 * @return true if the frame should be analysed; false if it should be dropped without any further work
+	 */
+	synchronized boolean shouldAnalyse(long now) {
+		if (now < mNextFrameTime) {
+			return false;
+		}
+		mNextFrameTime = now + getInterval(now);
+		return true;
+	}
+
+	/**
+	 * Report the outcome of analysing a frame. Motion resets the rate to active straight away.
+	 *
+	 * @param motionDetected whether the frame contained motion
+	 * @param now            the current time, in milliseconds (e.g., from SystemClock.elapsedRealtime())
+	 */
+	synchronized void onResult(boolean motionDetected, long now) {
+		if (motionDetected) {
+			mLastMotionTime = now;
+			mNextFrameTime = Math.min(mNextFrameTime, now + mActiveInterval);
+		}
+	}
+}
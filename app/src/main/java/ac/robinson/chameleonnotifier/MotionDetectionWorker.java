@@ -0,0 +1,87 @@
+package ac.robinson.chameleonnotifier;
+
+import android.os.Process;
+
+import com.jwetherell.motion_detection.source.LumaFrame;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A long-lived background thread that analyses camera frames, fed through a single-slot mailbox that only ever holds
+ * the most recent frame. Offering a frame while the worker is busy replaces any frame still waiting, so at most
+ * one frame is ever queued, the worker always analyses the newest frame available, and nothing is allocated per frame.
+ * <p>
+ * {@link #offer(LumaFrame)} is cheap enough to call directly from a frame callback: it is a single atomic swap, plus
+ * waking the worker when it was idle.
+ */
+class MotionDetectionWorker extends Thread {
+
+	interface FrameHandler {
+		/**
+		 * Called on the worker thread for each frame that is analysed. The handler must release the frame once done.
+		 *
+		 * @param frame the frame, as passed to {@link #offer(LumaFrame)}
+		 */
+		void analyseFrame(LumaFrame frame);
+	}
+
+	private final FrameHandler mFrameHandler;
+	private final AtomicReference<LumaFrame> mLatestFrame = new AtomicReference<>();
+	private volatile boolean mQuit;
+
+	/**
+	 * @param frameHandler receives every frame that is analysed, on the worker thread
+	 */
+	MotionDetectionWorker(FrameHandler frameHandler) {
+		super("MotionDetectionWorker");
+		mFrameHandler = frameHandler;
+	}
+
+	/**
+	 * Hand a frame to the worker, which then owns it until it is analysed or replaced.
+	 *
+	 * @param frame the frame to analyse
+	 * @return the frame this one replaced, which will now never be analysed, and must be released by the caller; or
+	 * null if the mailbox was empty
+	 */
+	LumaFrame offer(LumaFrame frame) {
+		LumaFrame replaced = mLatestFrame.getAndSet(frame);
+		if (replaced == null) {
+			LockSupport.unpark(this); // a waiting frame means the worker is already awake and will take this one
+		}
+		if (mQuit) {
+			releaseWaitingFrame(); // the worker may already have stopped, so it would never release this frame
+		}
+		return replaced;
+	}
+
+	/**
+	 * Stop the worker once it has finished with its current frame (if any). Any frame waiting is released unanalysed.
+	 */
+	void quit() {
+		mQuit = true;
+		interrupt();
+	}
+
+	private void releaseWaitingFrame() {
+		LumaFrame frame = mLatestFrame.getAndSet(null);
+		if (frame != null) {
+			frame.release();
+		}
+	}
+
+	@Override
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		while (!mQuit) {
+			LumaFrame frame = mLatestFrame.getAndSet(null);
+			if (frame == null) {
+				LockSupport.park(this); // offer() always unparks after filling an empty mailbox, so no frame is missed
+				continue;
+			}
+			mFrameHandler.analyseFrame(frame);
+		}
+		releaseWaitingFrame();
+	}
+}
@@ -0,0 +1,183 @@
+package ac.robinson.chameleonnotifier;
+
+import com.jwetherell.motion_detection.detection.IMotionDetection;
+import com.jwetherell.motion_detection.image.ImageProcessing;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.BackgroundSubtractorMOG2;
+import org.opencv.video.Video;
+
+/**
+ * Detects motion in the Y plane of NV21 preview frames using OpenCV's native (vectorised) routines rather than
+ * per-pixel Java loops. Either compares each frame with the previous one (absdiff, threshold, countNonZero), or,
+ * optionally, with a MOG2 background model. All Mats are allocated when the frame size changes and reused for every
+ * other frame.
+ * <p>
+ * OpenCV must have been initialised (e.g., via OpenCVLoader.initDebug()) before use. Call {@link #release()} when the
+ * detector is no longer needed to free native memory straight away.
+ */
+class OpenCVMotionDetection implements IMotionDetection {
+
+	private static final int PIXEL_THRESHOLD = 50; // difference in luma value
+	private static final float CHANGED_THRESHOLD = 0.01f; // fraction of image that has changed
+	private static final int BACKGROUND_HISTORY = 100; // frames used to build the MOG2 model
+	private static final double BACKGROUND_VARIANCE_THRESHOLD = 16; // squared distance for MOG2 foreground
+
+	private final int mMinimumPixels;
+	private final boolean mUseBackgroundSubtractor;
+
+	private int mWidth = 0;
+	private int mHeight = 0;
+	private int mCurrentIndex = 0;
+	private boolean mHasPrevious = false;
+
+	// two Y planes and their sampled versions, swapped after each frame so the previous frame is never copied
+	private final Mat[] mLuma = new Mat[2];
+	private final Mat[] mSampled = new Mat[2];
+	private Size mSampledSize;
+	private Mat mDifference;
+	private Mat mMask;
+	private byte[] mLumaBytes; // only for frames supplied as int arrays
+	private BackgroundSubtractorMOG2 mBackgroundSubtractor;
+
+	OpenCVMotionDetection(int minimumPixels, boolean useBackgroundSubtractor) {
+		mMinimumPixels = minimumPixels;
+		mUseBackgroundSubtractor = useBackgroundSubtractor;
+	}
+
+	private boolean resize(int width, int height) {
+		boolean hadFrame = mWidth > 0;
+		releaseMats();
+
+		int sampleFactor = mMinimumPixels > 0 ? ImageProcessing.getSampleFactor(width, height, mMinimumPixels) : 1;
+		mSampledSize = new Size(width / sampleFactor, height / sampleFactor);
+		for (int i = 0; i < mLuma.length; i++) {
+			mLuma[i] = new Mat(height, width, CvType.CV_8UC1);
+			mSampled[i] = sampleFactor > 1 ? new Mat((int) mSampledSize.height, (int) mSampledSize.width,
+					CvType.CV_8UC1) : mLuma[i];
+		}
+		mDifference = new Mat((int) mSampledSize.height, (int) mSampledSize.width, CvType.CV_8UC1);
+		mMask = new Mat((int) mSampledSize.height, (int) mSampledSize.width, CvType.CV_8UC1);
+		if (mUseBackgroundSubtractor) {
+			mBackgroundSubtractor = Video.createBackgroundSubtractorMOG2(BACKGROUND_HISTORY,
+					BACKGROUND_VARIANCE_THRESHOLD, false);
+		}
+
+		mWidth = width;
+		mHeight = height;
+		mHasPrevious = false;
+		return hadFrame;
+	}
+
+	private void releaseMats() {
+		for (int i = 0; i < mLuma.length; i++) {
+			if (mSampled[i] != null && mSampled[i] != mLuma[i]) {
+				mSampled[i].release();
+			}
+			if (mLuma[i] != null) {
+				mLuma[i].release();
+			}
+			mLuma[i] = mSampled[i] = null;
+		}
+		if (mDifference != null) {
+			mDifference.release();
+			mMask.release();
+			mDifference = mMask = null;
+		}
+		mBackgroundSubtractor = null;
+	}
+
+	/**
+	 * Free the native memory used by this detector. It will be reallocated if the detector is used again.
+	 */
+	synchronized void release() {
+		releaseMats();
+		mWidth = 0;
+		mHeight = 0;
+	}
+
+	private boolean detectCurrent() {
+		Mat current = mSampled[mCurrentIndex];
+		if (current != mLuma[mCurrentIndex]) {
+			Imgproc.resize(mLuma[mCurrentIndex], current, mSampledSize, 0, 0, Imgproc.INTER_AREA);
+		}
+
+		boolean hadPrevious = mHasPrevious;
+		if (mUseBackgroundSubtractor) {
+			mBackgroundSubtractor.apply(current, mMask); // the first frame initialises the model
+		} else if (hadPrevious) {
+			Core.absdiff(current, mSampled[1 - mCurrentIndex], mDifference);
+			Imgproc.threshold(mDifference, mMask, PIXEL_THRESHOLD - 1, 255, Imgproc.THRESH_BINARY);
+		}
+
+		mCurrentIndex = 1 - mCurrentIndex;
+		mHasPrevious = true;
+		if (!hadPrevious) {
+			return false;
+		}
+		return Core.countNonZero(mMask) > mSampledSize.area() * CHANGED_THRESHOLD;
+	}
+
+	@Override
+	public synchronized int[] getPrevious() {
+		if (!mHasPrevious) {
+			return null;
+		}
+
+		Mat previous = mSampled[1 - mCurrentIndex];
+		byte[] bytes = new byte[(int) previous.total()];
+		previous.get(0, 0, bytes);
+		int[] luma = new int[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			luma[i] = 0xff & bytes[i];
+		}
+		return luma;
+	}
+
+	@Override
+	public synchronized boolean detect(byte[] yuv420sp, int width, int height) {
+		if (yuv420sp == null) {
+			throw new NullPointerException();
+		}
+
+		// a change of size counts as motion, but the first frame does not
+		if (width != mWidth || height != mHeight) {
+			boolean sizeChanged = resize(width, height);
+			mLuma[mCurrentIndex].put(0, 0, yuv420sp);
+			detectCurrent();
+			return sizeChanged;
+		}
+
+		// Java byte arrays cannot be wrapped by a Mat, so the Y plane (only - put stops at the end of the Mat) is copied
+		// into preallocated native memory in a single call
+		mLuma[mCurrentIndex].put(0, 0, yuv420sp);
+		return detectCurrent();
+	}
+
+	@Override
+	public synchronized boolean detect(int[] luma, int width, int height) {
+		if (luma == null) {
+			throw new NullPointerException();
+		}
+
+		boolean sizeChanged = false;
+		boolean newFrameSize = width != mWidth || height != mHeight;
+		if (newFrameSize) {
+			sizeChanged = resize(width, height);
+		}
+		if (mLumaBytes == null || mLumaBytes.length != width * height) {
+			mLumaBytes = new byte[width * height];
+		}
+		for (int i = 0; i < mLumaBytes.length; i++) {
+			mLumaBytes[i] = (byte) luma[i];
+		}
+
+		mLuma[mCurrentIndex].put(0, 0, mLumaBytes);
+		boolean motionDetected = detectCurrent();
+		return newFrameSize ? sizeChanged : motionDetected;
+	}
+}
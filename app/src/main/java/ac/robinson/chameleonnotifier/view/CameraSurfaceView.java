@@ -5,6 +5,7 @@ import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.hardware.Camera;
 import android.hardware.Camera.Size;
+import android.os.Handler;
 import android.util.Log;
 import android.view.Display;
 import android.view.SurfaceHolder;
@@ -14,6 +15,8 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
 
@@ -25,9 +28,12 @@ public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Call
 
 	private static final int PREVIEW_FORMAT = ImageFormat.NV21; // always supported on every Android device
 
+	private static final int SURFACE_DESTROYED_TIMEOUT = 2000; // ms to wait for the camera to stop using the surface
+
 	private SurfaceHolder mHolder;
 
 	private Camera mCamera;
+	private Handler mCameraHandler; // every call to the camera is made on the thread that opened it
 	private Point mScreenSize;
 
 	private int mDisplayRotation;
@@ -41,23 +47,28 @@ public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Call
 	private List<Size> mSupportedPictureSizes; // claimed supported
 	private Size mDefaultPictureSize; // device default
 
+	private String mFlashMode; // null to leave as the device default
+
 	private Camera.AutoFocusCallback mAutoFocusCallback;
-	private Camera.PreviewCallback mPreviewCallback;
+	private LegacyCameraFrameSource mFrameSource;
 
 	private boolean mPreferSmallestPreviewSize;
 
+	private boolean mCameraDetached; // set once the camera's release has been requested (only used on the main thread)
+
 	public CameraSurfaceView(Context context) {
 		super(context); // this constructor is just to enable viewing in IDE tools
 	}
 
-	public CameraSurfaceView(Context context, Display display, Camera camera, int displayRotation, int cameraRotation,
-							 Camera.AutoFocusCallback autoFocusCallback, Camera.PreviewCallback previewCallback,
-							 boolean preferSmallestPreviewSize) {
+	public CameraSurfaceView(Context context, Display display, Camera camera, Handler cameraHandler,
+							 int displayRotation, int cameraRotation, Camera.AutoFocusCallback autoFocusCallback,
+							 LegacyCameraFrameSource frameSource, boolean preferSmallestPreviewSize) {
 		super(context);
 
 		mScreenSize = new Point();
 		display.getSize(mScreenSize);
 		mCamera = camera;
+		mCameraHandler = cameraHandler;
 
 		mDisplayRotation = displayRotation;
 		mCameraRotation = cameraRotation;
@@ -76,7 +87,7 @@ public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Call
 				int offMode = modes.indexOf(Camera.Parameters.FLASH_MODE_OFF);
 				if (modes.size() > (offMode >= 0 ? 1 : 0)) {
 					if (modes.contains(Camera.Parameters.FLASH_MODE_AUTO)) { // default to auto flash
-						parameters.setFlashMode(Camera.Parameters.FLASH_MODE_AUTO);
+						mFlashMode = Camera.Parameters.FLASH_MODE_AUTO; // applied when the preview is configured
 					}
 				}
 			}
@@ -84,10 +95,9 @@ public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Call
 		}
 
 		mAutoFocusCallback = autoFocusCallback;
-		mPreviewCallback = previewCallback;
+		mFrameSource = frameSource;
 
 		mPreferSmallestPreviewSize = preferSmallestPreviewSize;
-		mCamera.setParameters(parameters);
 
 		// register for create/destroy events
 		mHolder = getHolder();
@@ -120,16 +130,56 @@ public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Call
 		}
 	}
 
-	public void surfaceCreated(SurfaceHolder holder) {
-		try {
-			mCamera.setPreviewDisplay(holder);
-		} catch (IOException e) {
-			Log.d(TAG, "Error setting camera preview: " + e.getLocalizedMessage());
-		}
+	public void surfaceCreated(final SurfaceHolder holder) {
+		mCameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					mCamera.setPreviewDisplay(holder);
+				} catch (IOException | RuntimeException e) { // RuntimeException if the camera is already released
+					Log.d(TAG, "Error setting camera preview: " + e.getLocalizedMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stop using the camera from this view, because its release has been requested (releasing the camera on its own
+	 * thread also stops the preview and clears the preview display). Must be called on the main thread before the view
+	 * is removed, so that destroying the surface does not wait for the camera thread.
+	 */
+	public void detachCamera() {
+		mCameraDetached = true;
 	}
 
 	public void surfaceDestroyed(SurfaceHolder holder) {
-		// removed in activity
+		if (mCameraDetached) {
+			return; // the camera is being released, which stops it drawing to this surface without us waiting for it
+		}
+
+		// the surface is invalid once this method returns, so a camera that is still live must stop drawing to it first
+		final CountDownLatch stoppedLatch = new CountDownLatch(1);
+		boolean posted = mCameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					mCamera.stopPreview();
+					mCamera.setPreviewDisplay(null);
+				} catch (IOException | RuntimeException ignored) { // RuntimeException if the camera is already released
+				} finally {
+					stoppedLatch.countDown();
+				}
+			}
+		});
+		if (posted) { // if not, the camera thread has quit, and has therefore already released the camera
+			try {
+				if (!stoppedLatch.await(SURFACE_DESTROYED_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					Log.d(TAG, "Timed out waiting for the camera to stop using the preview surface");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
@@ -137,6 +187,18 @@ public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Call
 			return; // we need the surface to exist before starting the preview
 		}
 
+		// the camera is configured on its own thread (after the preview display has been set), so the UI never waits
+		final Size previewSize = mPreviewSize;
+		final Size pictureSize = mPictureSize;
+		mCameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				startPreview(previewSize, pictureSize);
+			}
+		});
+	}
+
+	private void startPreview(Size previewSize, Size pictureSize) {
 		// must stop any existing preview before making changes
 		try {
 			mCamera.stopPreview();
@@ -146,27 +208,32 @@ public class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Call
 		try {
 			// supported preview and picture sizes checked earlier
 			Camera.Parameters parameters = mCamera.getParameters();
-			parameters.setPreviewSize(mPreviewSize.width, mPreviewSize.height);
+			parameters.setPreviewSize(previewSize.width, previewSize.height);
 			parameters.setPreviewFormat(PREVIEW_FORMAT);
-			parameters.setPictureSize(mPictureSize.width, mPictureSize.height);
+			parameters.setPictureSize(pictureSize.width, pictureSize.height);
 			parameters.setRotation(mCameraRotation);
+			if (mFlashMode != null) {
+				parameters.setFlashMode(mFlashMode);
+			}
 			mCamera.setDisplayOrientation(mDisplayRotation);
 			mCamera.setParameters(parameters);
 
 			// we use the buffered preview method, as unbuffered doesn't work on some newer devices
 			// note: we use actual camera format, rather than PREVIEW_FORMAT - sometimes setPreviewFormat fails, and
 			// it's better to fail to scan than to crash entirely due to a buffer being too small
-			int previewBufferSize = mPreviewSize.width * mPreviewSize.height *
-					ImageFormat.getBitsPerPixel(mCamera.getParameters().getPreviewFormat()) / 8;
-			mCamera.addCallbackBuffer(new byte[previewBufferSize]);
-			mCamera.addCallbackBuffer(new byte[previewBufferSize]); // need at least two for some devices
+			// (the frame source caches the size the camera actually applied, so frames never need to query it)
+			Camera.Parameters configuredParameters = mCamera.getParameters();
+			Size configuredPreviewSize = configuredParameters.getPreviewSize();
+			int previewBufferSize = configuredPreviewSize.width * configuredPreviewSize.height *
+					ImageFormat.getBitsPerPixel(configuredParameters.getPreviewFormat()) / 8;
+			if (mFrameSource != null) {
+				mFrameSource.configure(mCamera, configuredPreviewSize.width, configuredPreviewSize.height,
+						previewBufferSize);
+			}
 		} catch (Throwable ignored) {
 		}
 
 		try {
-			if (mPreviewCallback != null) {
-				mCamera.setPreviewCallback(mPreviewCallback);
-			}
 			mCamera.startPreview();
 			mCamera.autoFocus(mAutoFocusCallback);
 		} catch (Exception e) {
@@ -0,0 +1,112 @@
+package ac.robinson.chameleonnotifier.view;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.jwetherell.motion_detection.source.FrameSource;
+import com.jwetherell.motion_detection.source.LumaFrame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FrameSource} for the original {@link Camera} API, used when Camera2 is not available (or not worthwhile).
+ * Frames arrive through {@link Camera#setPreviewCallbackWithBuffer} in a {@link PreviewBufferPool}, and each is
+ * delivered as the Y plane at the start of its NV21 buffer, which is returned to the camera when the frame is released.
+ * <p>
+ * The source is configured by {@link CameraSurfaceView} when it starts the preview, and delivers frames on the
+ * camera's thread (the thread that opened the camera). {@link #start} and {@link #stop} may be called on any thread.
+ */
+public class LegacyCameraFrameSource implements FrameSource, Camera.PreviewCallback, LumaFrame.Owner {
+
+	private static final String TAG = "LegacyCameraFrameSource";
+
+	private static final int PREVIEW_BUFFER_COUNT = 4; // two for the camera, one waiting for analysis, one analysing
+
+	private final PreviewBufferPool mBufferPool = new PreviewBufferPool(PREVIEW_BUFFER_COUNT);
+	private final LumaFrame[] mFrames = new LumaFrame[PREVIEW_BUFFER_COUNT]; // one per buffer; replaced on configure
+	private final Handler mCameraHandler;
+	private volatile Listener mListener;
+	private int mWidth;
+	private int mHeight;
+
+	/**
+	 * @param cameraHandler a handler for the camera's thread, which is where the preview buffers are managed
+	 */
+	public LegacyCameraFrameSource(Handler cameraHandler) {
+		mCameraHandler = cameraHandler;
+	}
+
+	/**
+	 * Allocate the preview buffers and register for frames - called by {@link CameraSurfaceView} before each time the
+	 * preview is started.
+	 *
+	 * @param camera     the camera that will deliver frames
+	 * @param width      the preview's width, as applied by the camera
+	 * @param height     the preview's height, as applied by the camera
+	 * @param bufferSize the size of each preview buffer, in bytes
+	 */
+	void configure(Camera camera, int width, int height, int bufferSize) {
+		mBufferPool.attach(camera, bufferSize);
+		mWidth = width;
+		mHeight = height;
+		for (int i = 0; i < mFrames.length; i++) {
+			mFrames[i] = new LumaFrame(this);
+			mFrames[i].set(ByteBuffer.wrap(mBufferPool.getBuffer(i)), width, width, height, 0);
+		}
+		camera.setPreviewCallbackWithBuffer(this);
+	}
+
+	@Override
+	public void start(Listener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * Stop delivering frames. The preview buffers are detached on the camera's thread, so this must be called before
+	 * the camera is released there.
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void stop() {
+		mListener = null;
+		mCameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (mBufferPool.getExhaustedCount() > 0) {
+					Log.d(TAG, "Preview buffer pool exhausted " + mBufferPool.getExhaustedCount() + " times (" +
+							mBufferPool.getStarvedTime() + " ms without a buffer)");
+				}
+				mBufferPool.detach(); // frames still being analysed are discarded rather than returned to the old camera
+			}
+		});
+	}
+
+	@Override
+	public void onPreviewFrame(byte[] data, Camera camera) {
+		mBufferPool.onFrameReceived(data);
+		Listener listener = mListener;
+		LumaFrame frame = listener != null ? getFrame(data) : null;
+		if (frame == null) {
+			mBufferPool.recycle(data);
+			return;
+		}
+		frame.set(frame.getPlane(), mWidth, mWidth, mHeight, SystemClock.elapsedRealtime());
+		listener.onFrame(frame);
+	}
+
+	private LumaFrame getFrame(byte[] data) {
+		for (LumaFrame frame : mFrames) {
+			if (frame != null && frame.getPlane().array() == data) {
+				return frame;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void release(LumaFrame frame) {
+		mBufferPool.recycle(frame.getPlane().array()); // safe from any thread; stale buffers are simply discarded
+	}
+}
@@ -0,0 +1,187 @@
+package ac.robinson.chameleonnotifier.view;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+
+/**
+ * A fixed pool of preview buffers that circulate between the camera and whoever is analysing its frames. Buffers are
+ * allocated once, when the preview is configured, and given to the camera with {@link Camera#addCallbackBuffer}; every
+ * frame delivered to a {@link Camera.PreviewCallback} registered with {@link Camera#setPreviewCallbackWithBuffer}
+ * must then be passed back through {@link #recycle(byte[])} once it is no longer needed (immediately if it is not
+ * going to be analysed), so that frame delivery never allocates.
+ * <p>
+ * When every buffer is held outside the camera the pool is exhausted and the camera silently drops frames until one
+ * is returned; {@link #getExhaustedCount()} and {@link #getStarvedTime()} report how often and for how long this has
+ * happened, which shows whether the pool is large enough for the analysis rate.
+ * <p>
+ * Apart from {@link #recycle(byte[])}, which may be called from any thread, all methods must be called on the
+ * camera's thread (the thread whose looper receives preview callbacks).
+ */
+public class PreviewBufferPool implements Handler.Callback {
+
+	private static final int MSG_RECYCLE = 1;
+
+	private final byte[][] mBuffers;
+	private Camera mCamera;
+	private volatile Handler mHandler; // read by recycle() on any thread
+
+	private int mQueuedCount; // buffers currently held by the camera
+	private int mExhaustedCount;
+	private long mStarvedTime;
+	private long mStarvedSince;
+
+	/**
+	 * @param bufferCount the number of buffers to circulate - at least two are needed for some devices, plus one for
+	 *                    each frame that may be held outside the camera at once
+	 */
+	public PreviewBufferPool(int bufferCount) {
+		if (bufferCount < 2) {
+			throw new IllegalArgumentException("At least two preview buffers are required");
+		}
+		mBuffers = new byte[bufferCount][];
+	}
+
+	/**
+	 * Allocate a new set of buffers and give them all to the camera. Any buffers from a previous configuration that are
+	 * still in use will be discarded when they are recycled.
+	 *
+	 * @param camera     the camera that will fill the buffers
+	 * @param bufferSize the size of each buffer, in bytes
+	 */
+	public void attach(Camera camera, int bufferSize) {
+		detach();
+		mCamera = camera;
+		mHandler = new Handler(Looper.myLooper(), this);
+		for (int i = 0; i < mBuffers.length; i++) {
+			mBuffers[i] = new byte[bufferSize];
+			mCamera.addCallbackBuffer(mBuffers[i]);
+		}
+		mQueuedCount = mBuffers.length;
+	}
+
+	/**
+	 * Stop returning buffers to the camera, e.g., before it is released. Buffers recycled after this are discarded.
+	 */
+	public void detach() {
+		if (mHandler != null) {
+			mHandler.removeMessages(MSG_RECYCLE);
+			mHandler = null;
+		}
+		mCamera = null;
+		endStarvation();
+		for (int i = 0; i < mBuffers.length; i++) {
+			mBuffers[i] = null;
+		}
+		mQueuedCount = 0;
+	}
+
+	/**
+	 * Record that the camera has delivered a frame. Call this first in every preview callback.
+	 *
+	 * @param buffer the buffer passed to the callback
+	 */
+	public void onFrameReceived(byte[] buffer) {
+		if (mCamera == null || !isPoolBuffer(buffer)) {
+			return;
+		}
+		mQueuedCount -= 1;
+		if (mQueuedCount == 0) {
+			mExhaustedCount += 1; // the camera cannot deliver any more frames until a buffer is recycled
+			mStarvedSince = SystemClock.elapsedRealtime();
+		}
+	}
+
+	/**
+	 * Return a buffer to the camera so it can be filled again. May be called from any thread - when called from a
+	 * thread other than the camera's, the buffer is handed back on the camera's thread.
+	 *
+	 * @param buffer a buffer previously delivered to the preview callback
+	 */
+	public void recycle(byte[] buffer) {
+		Handler handler = mHandler;
+		if (handler == null || buffer == null) {
+			return;
+		}
+		if (handler.getLooper() == Looper.myLooper()) {
+			returnToCamera(buffer);
+		} else {
+			handler.obtainMessage(MSG_RECYCLE, buffer).sendToTarget(); // messages are pooled, so this doesn't allocate
+		}
+	}
+
+	@Override
+	public boolean handleMessage(Message msg) {
+		if (msg.what == MSG_RECYCLE) {
+			returnToCamera((byte[]) msg.obj);
+			return true;
+		}
+		return false;
+	}
+
+	private void returnToCamera(byte[] buffer) {
+		if (mCamera == null || !isPoolBuffer(buffer)) {
+			return; // detached, or left over from a previous configuration
+		}
+		if (mQueuedCount == 0) {
+			endStarvation();
+		}
+		mQueuedCount += 1;
+		mCamera.addCallbackBuffer(buffer);
+	}
+
+	private boolean isPoolBuffer(byte[] buffer) {
+		for (byte[] poolBuffer : mBuffers) {
+			if (poolBuffer == buffer) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void endStarvation() {
+		if (mStarvedSince > 0) {
+			mStarvedTime += SystemClock.elapsedRealtime() - mStarvedSince;
+			mStarvedSince = 0;
+		}
+	}
+
+	/**
+	 * @return the number of buffers in the pool
+	 */
+	public int getBufferCount() {
+		return mBuffers.length;
+	}
+
+	/**
+	 * @param index the index of a buffer, from 0 to {@link #getBufferCount()} - 1
+	 * @return the buffer, or null if the pool is not attached to a camera
+	 */
+	public byte[] getBuffer(int index) {
+		return mBuffers[index];
+	}
+
+	/**
+	 * @return the number of buffers currently held by the camera, waiting to be filled
+	 */
+	public int getQueuedCount() {
+		return mQueuedCount;
+	}
+
+	/**
+	 * @return the number of times the camera has been left without a buffer to fill (it drops any frames that arrive
+	 * before one is recycled)
+	 */
+	public int getExhaustedCount() {
+		return mExhaustedCount;
+	}
+
+	/**
+	 * @return the total time, in milliseconds, that the camera has spent without a buffer to fill
+	 */
+	public long getStarvedTime() {
+		return mStarvedTime + (mStarvedSince > 0 ? SystemClock.elapsedRealtime() - mStarvedSince : 0);
+	}
+}
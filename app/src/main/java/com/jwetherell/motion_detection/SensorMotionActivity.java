@@ -38,7 +38,7 @@ public abstract class SensorMotionActivity extends AppCompatActivity implements
 	private static float prevGrav = 0.0f;
 	private static float prevMag = 0.0f;
 
-	private static boolean mIsInMotion = false;
+	private static volatile boolean mIsInMotion = false;
 
 	/**
 	 * {@inheritDoc}
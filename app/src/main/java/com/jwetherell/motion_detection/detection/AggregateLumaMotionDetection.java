@@ -1,5 +1,10 @@
 package com.jwetherell.motion_detection.detection;
 
+import com.jwetherell.motion_detection.image.ImageProcessing;
+import com.jwetherell.motion_detection.image.IntegralImage;
+
+import java.nio.IntBuffer;
+
 //import android.util.Log;
 
 /**
@@ -19,76 +24,145 @@ public class AggregateLumaMotionDetection implements IMotionDetection {
     private static final int mXBoxes = 10; // State based debug
     private static final int mYBoxes = 10; // State based debug
 
-    private static int[] mPrevious = null;
-    private static int mPreviousWidth;
-    private static int mPreviousHeight;
-    private static State mPreviousState = null;
+    // The previous and current frames are held in two buffers that are
+    // swapped after each frame, and each comparer keeps the box means of the
+    // previous frame, so no frame is ever cloned or averaged twice
+    private int[] mPrevious = null;
+    private int[] mCurrent = null;
+    private final IntegralImage mIntegralImage = new IntegralImage();
+    private final BlockComparer[] mComparers;
+
+    /**
+     * Create a detector that compares a single 10x10 grid of boxes.
+     */
+    public AggregateLumaMotionDetection() {
+        this(new BlockComparer(mXBoxes, mYBoxes, mLeniency, mDebugMode));
+    }
+
+    /**
+     * Create a detector that compares one or more grids of boxes (e.g., 8x8
+     * and 64x64 at once). Box means for every grid are read from a single
+     * summed-area table per frame, so the cost of each grid depends only on
+     * its number of boxes. Motion is detected if any grid has changed.
+     * 
+     * @param comparers
+     *            BlockComparers, one for each grid.
+     * @throws IllegalArgumentException
+     *             if no comparers are given.
+     */
+    public AggregateLumaMotionDetection(BlockComparer... comparers) {
+        if (comparers == null || comparers.length == 0) {
+            throw new IllegalArgumentException("At least one comparer is required");
+        }
+        mComparers = comparers.clone();
+    }
+
+    /**
+     * Get a comparer, to find which of its boxes changed in the last frame.
+     * 
+     * @param index
+     *            Index of the comparer, in the order it was given.
+     * @return BlockComparer for that grid.
+     */
+    public BlockComparer getComparer(int index) {
+        return mComparers[index];
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int[] getPrevious() {
+    public synchronized int[] getPrevious() {
         return ((mPrevious != null) ? mPrevious.clone() : null);
     }
 
-    protected static boolean isDifferent(int[] first, int width, int height) {
-        if (first == null) throw new NullPointerException();
+    /**
+     * Get the previous image without copying it. The view is only valid until
+     * the next call to detect, which will overwrite its contents.
+     * 
+     * @return read-only IntBuffer of previous image.
+     */
+    public synchronized IntBuffer getPreviousView() {
+        return ((mPrevious != null) ? IntBuffer.wrap(mPrevious).asReadOnlyBuffer() : null);
+    }
 
-        if (mPrevious == null) return false;
-        if (first.length != mPrevious.length) return true;
-        if (mPreviousWidth != width || mPreviousHeight != height) return true;
+    private int[] getCurrentBuffer(int size) {
+        if (mCurrent == null || mCurrent.length != size) mCurrent = new int[size];
+        return mCurrent;
+    }
 
-        if (mPreviousState == null) {
-            mPreviousState = new State(mPrevious, mPreviousWidth, mPreviousHeight);
-            return false;
-        }
+    protected boolean isDifferent(int[] current, int[] output, int width, int height) {
+        if (current == null) throw new NullPointerException();
 
-        State state = new State(first, width, height);
-        Comparer comparer = new Comparer(state, mPreviousState, mXBoxes, mYBoxes, mLeniency, mDebugMode);
+        mIntegralImage.build(current, width, height);
 
-        boolean different = comparer.isDifferent();
+        // A change of size counts as motion, but the first frame does not
+        boolean sizeChanged = !mComparers[0].isConfiguredFor(width, height);
+        if (sizeChanged) {
+            for (BlockComparer comparer : mComparers) {
+                comparer.configure(width, height);
+                comparer.update(mIntegralImage);
+            }
+            return mPrevious != null;
+        }
+
+        boolean different = false;
+        for (BlockComparer comparer : mComparers) {
+            if (comparer.update(mIntegralImage)) different = true;
+        }
         // String output = "isDifferent="+different;
         if (different) {
             // Log.e(TAG, output);
-            comparer.paintDifferences(first);
+            if (output != null) {
+                for (BlockComparer comparer : mComparers) {
+                    if (comparer.isDifferent()) comparer.paintDifferences(output);
+                }
+            }
             // } else {
             // Log.d(TAG, output);
         }
 
-        mPreviousState = state;
-
         return different;
     }
 
+    private boolean detectCurrent(int[] output, int width, int height) {
+        // long bDetection = System.currentTimeMillis();
+        boolean motionDetected = isDifferent(mCurrent, output, width, height);
+        // long aDetection = System.currentTimeMillis();
+        // Log.d(TAG, "Detection "+(aDetection-bDetection));
+
+        // Replace the current image with the previous. The first frame
+        // becomes the "mPrevious" picture, the one that will be used to check
+        // the next frame against.
+        int[] previous = mPrevious;
+        mPrevious = mCurrent;
+        mCurrent = previous;
+
+        return motionDetected;
+    }
+
     /**
      * Detect motion using aggregate luma values. {@inheritDoc}
      */
     @Override
-    public boolean detect(int[] luma, int width, int height) {
+    public synchronized boolean detect(int[] luma, int width, int height) {
         if (luma == null) throw new NullPointerException();
 
-        int[] original = luma.clone();
-
-        // Create the "mPrevious" picture, the one that will be used to check
-        // the next frame against.
-        if (mPrevious == null) {
-            mPrevious = original;
-            mPreviousWidth = width;
-            mPreviousHeight = height;
-            // Log.i(TAG, "Creating background image");
-        }
-
-        // long bDetection = System.currentTimeMillis();
-        boolean motionDetected = isDifferent(luma, width, height);
-        // long aDetection = System.currentTimeMillis();
-        // Log.d(TAG, "Detection "+(aDetection-bDetection));
+        // Keep an unpainted copy of this frame to compare the next one against
+        System.arraycopy(luma, 0, getCurrentBuffer(luma.length), 0, luma.length);
+        return detectCurrent(luma, width, height);
+    }
 
-        // Replace the current image with the previous.
-        mPrevious = original;
-        mPreviousWidth = width;
-        mPreviousHeight = height;
+    /**
+     * Detect motion by decoding luma values and comparing aggregates. The
+     * decoded image becomes the next previous image directly, so nothing is
+     * copied. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(byte[] yuv420sp, int width, int height) {
+        if (yuv420sp == null) throw new NullPointerException();
 
-        return motionDetected;
+        ImageProcessing.decodeYUV420SPtoLuma(yuv420sp, width, height, getCurrentBuffer(width * height));
+        return detectCurrent(null, width, height);
     }
 }
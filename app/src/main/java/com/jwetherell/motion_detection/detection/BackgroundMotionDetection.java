@@ -0,0 +1,209 @@
+package com.jwetherell.motion_detection.detection;
+
+import com.jwetherell.motion_detection.image.ImageProcessing;
+
+/**
+ * This class detects motion by comparing each frame with a background model,
+ * rather than with the previous frame. The model keeps an exponentially
+ * weighted running mean and variance of every pixel's luma, so slow lighting
+ * changes are gradually absorbed into the background, and pixels that are
+ * naturally noisy (e.g., in low light) need a larger change before they count
+ * as foreground. Motion is reported when the fraction of foreground pixels
+ * passes a threshold.
+ *
+ * As with {@link YuvLumaMotionDetection}, frames can be point-sampled down
+ * towards a minimum analysis size, and YUV420SP frames are read directly from
+ * their Y plane.
+ */
+public class BackgroundMotionDetection implements IMotionDetection {
+
+    // Specific settings (defaults)
+    private static final float mDefaultLearningRate = 0.05f; // Weight of each new frame in the model
+    private static final float mDefaultThreshold = 0.01f; // Fraction of image that is foreground
+    private static final float mDeviations = 2.5f; // Standard deviations from the mean for foreground
+    private static final float mMinimumVariance = 10 * 10; // Ignore changes within normal sensor noise
+
+    private final int mMinimumPixels;
+    private final float mLearningRate;
+    private final float mThreshold;
+
+    private float[] mMean = null;
+    private float[] mVariance = null;
+    private int mPreviousWidth = 0;
+    private int mPreviousHeight = 0;
+    private int mSampleStep = 1;
+    private float mForegroundFraction = 0;
+
+    /**
+     * Create a detector that models every pixel of each frame.
+     */
+    public BackgroundMotionDetection() {
+        this(0);
+    }
+
+    /**
+     * Create a detector that samples frames down towards the given size.
+     *
+     * @param minimumPixels
+     *            Smallest number of pixels to analyse per frame; 0 to analyse
+     *            every pixel.
+     */
+    public BackgroundMotionDetection(int minimumPixels) {
+        this(minimumPixels, mDefaultLearningRate, mDefaultThreshold);
+    }
+
+    /**
+     * Create a detector that samples frames down towards the given size, with
+     * a custom learning rate and threshold.
+     *
+     * @param minimumPixels
+     *            Smallest number of pixels to analyse per frame; 0 to analyse
+     *            every pixel.
+     * @param learningRate
+     *            Weight (0-1) of each new frame in the background model;
+     *            higher values adapt to change more quickly.
+     * @param threshold
+     *            Fraction (0-1) of the image that must be foreground for there
+     *            to be motion.
+     * @throws IllegalArgumentException
+     *             if learningRate is not between 0 and 1.
+     */
+    public BackgroundMotionDetection(int minimumPixels, float learningRate, float threshold) {
+        if (!(learningRate > 0 && learningRate <= 1)) throw new IllegalArgumentException("Invalid learning rate");
+
+        mMinimumPixels = minimumPixels;
+        mLearningRate = learningRate;
+        mThreshold = threshold;
+    }
+
+    /**
+     * Get the background model's mean luma, at the analysis resolution.
+     *
+     * @return int array of the background image.
+     */
+    @Override
+    public synchronized int[] getPrevious() {
+        if (mMean == null) return null;
+
+        int[] previous = new int[mMean.length];
+        for (int i = 0; i < previous.length; i++) {
+            previous[i] = Math.round(mMean[i]);
+        }
+        return previous;
+    }
+
+    /**
+     * Get the fraction of the last frame that differed from the background.
+     *
+     * @return float between 0 and 1.
+     */
+    public synchronized float getForegroundFraction() {
+        return mForegroundFraction;
+    }
+
+    private boolean resetModel(int width, int height) {
+        boolean hadModel = mMean != null;
+        mSampleStep = mMinimumPixels > 0 ? ImageProcessing.getSampleFactor(width, height, mMinimumPixels) : 1;
+        int size = (width / mSampleStep) * (height / mSampleStep);
+        if (mMean == null || mMean.length != size) {
+            mMean = new float[size];
+            mVariance = new float[size];
+        }
+        mPreviousWidth = width;
+        mPreviousHeight = height;
+        return hadModel;
+    }
+
+    // Update one pixel of the model, returning 1 if it is foreground
+    private int updatePixel(int p, int pix) {
+        final float[] mean = mMean;
+        final float[] variance = mVariance;
+
+        float diff = pix - mean[p];
+        float diffSquared = diff * diff;
+        float var = variance[p];
+        float limit = mDeviations * mDeviations * Math.max(var, mMinimumVariance);
+        int foreground = (diffSquared > limit) ? 1 : 0;
+
+        // Foreground pixels still move the mean, so lasting changes are
+        // eventually absorbed, but not the variance, which would otherwise
+        // grow quickly enough to hide the change
+        mean[p] += mLearningRate * diff;
+        if (foreground == 0) variance[p] = var + mLearningRate * (diffSquared - var);
+        return foreground;
+    }
+
+    private boolean finishFrame(boolean newFrameSize, boolean sizeChanged, int foregroundPixels) {
+        if (newFrameSize) {
+            mForegroundFraction = sizeChanged ? 1 : 0;
+            return sizeChanged;
+        }
+        mForegroundFraction = (float) foregroundPixels / mMean.length;
+        return mForegroundFraction > mThreshold;
+    }
+
+    /**
+     * Detect motion by comparing the Y plane of a YUV420SP image with the
+     * background model, then updating the model. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(byte[] yuv420sp, int width, int height) {
+        if (yuv420sp == null) throw new NullPointerException();
+
+        // The first frame, or a frame of a new size, becomes the background
+        boolean newFrameSize = mMean == null || mPreviousWidth != width || mPreviousHeight != height;
+        boolean sizeChanged = newFrameSize && resetModel(width, height);
+
+        final int step = mSampleStep;
+        final int sampledWidth = width / step;
+        final int sampledHeight = height / step;
+        final int rowStride = width * step;
+
+        int foregroundPixels = 0;
+        for (int j = 0, p = 0, rowStart = 0; j < sampledHeight; j++, rowStart += rowStride) {
+            for (int i = 0, yp = rowStart; i < sampledWidth; i++, p++, yp += step) {
+                int pix = 0xff & yuv420sp[yp];
+                if (newFrameSize) {
+                    mMean[p] = pix;
+                    mVariance[p] = mMinimumVariance;
+                } else {
+                    foregroundPixels += updatePixel(p, pix);
+                }
+            }
+        }
+        return finishFrame(newFrameSize, sizeChanged, foregroundPixels);
+    }
+
+    /**
+     * Detect motion by comparing an image of luma values with the background
+     * model, then updating the model. Frames should be supplied consistently
+     * through either this method or {@link #detect(byte[], int, int)}, as the
+     * two do not share the same luma offset. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(int[] luma, int width, int height) {
+        if (luma == null) throw new NullPointerException();
+
+        boolean newFrameSize = mMean == null || mPreviousWidth != width || mPreviousHeight != height;
+        boolean sizeChanged = newFrameSize && resetModel(width, height);
+
+        final int step = mSampleStep;
+        final int sampledWidth = width / step;
+        final int sampledHeight = height / step;
+        final int rowStride = width * step;
+
+        int foregroundPixels = 0;
+        for (int j = 0, p = 0, rowStart = 0; j < sampledHeight; j++, rowStart += rowStride) {
+            for (int i = 0, yp = rowStart; i < sampledWidth; i++, p++, yp += step) {
+                int pix = 0xff & luma[yp];
+                if (newFrameSize) {
+                    mMean[p] = pix;
+                    mVariance[p] = mMinimumVariance;
+                } else {
+                    foregroundPixels += updatePixel(p, pix);
+                }
+            }
+        }
+        return finishFrame(newFrameSize, sizeChanged, foregroundPixels);
+    }
+}
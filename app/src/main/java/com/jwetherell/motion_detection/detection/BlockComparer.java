@@ -0,0 +1,346 @@
+package com.jwetherell.motion_detection.detection;
+
+import android.graphics.Color;
+
+import com.jwetherell.motion_detection.image.IntegralImage;
+
+/**
+ * This class is a long-lived alternative to {@link Comparer} and
+ * {@link State}. It divides images into the same grid of boxes as Comparer,
+ * but is configured once for a frame size and then reused for every frame:
+ * the mean of each box is calculated exactly once per frame, in a single pass
+ * over the image, and is kept in flat arrays that are swapped rather than
+ * reallocated, so comparing a frame allocates nothing.
+ *
+ * Box means can also be read from an {@link IntegralImage} in constant time
+ * per box, so that dense grids, or several grids sharing one table, cost no
+ * more than a single pass over the image.
+ */
+public class BlockComparer {
+
+    private final int mRequestedXBoxes;
+    private final int mRequestedYBoxes;
+    private final int mLeniency;
+    private final int mDebugMode; // 1: textual indication of change, 2:
+                                  // difference of factors
+
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private int mXBoxes = 0;
+    private int mYBoxes = 0;
+    private int mXPixelsPerBox = 0;
+    private int mYPixelsPerBox = 0;
+    private int mXLeftOver = 0;
+    private int mYLeftOver = 0;
+
+    // Box means of the current and previous frames, and their differences,
+    // indexed by (yBox * mXBoxes) + xBox
+    private int[] mCurrentMeans = null;
+    private int[] mPreviousMeans = null;
+    private int[] mVariance = null;
+    private boolean mHasPrevious = false;
+    private boolean mDifferent = false;
+
+    /**
+     * Create a comparer for the given grid. Before use, it must be configured
+     * for a frame size by calling {@link #configure(int, int)}.
+     *
+     * @param xBoxes
+     *            Number of boxes across the image.
+     * @param yBoxes
+     *            Number of boxes down the image.
+     * @param leniency
+     *            Difference in box means above which a box has changed.
+     * @param debugMode
+     *            1: textual indication of change, 2: difference of factors.
+     * @throws IllegalArgumentException
+     *             if xBoxes or yBoxes is less than one.
+     */
+    public BlockComparer(int xBoxes, int yBoxes, int leniency, int debugMode) {
+        if (xBoxes < 1 || yBoxes < 1) throw new IllegalArgumentException("At least one box is required");
+
+        mRequestedXBoxes = xBoxes;
+        mRequestedYBoxes = yBoxes;
+        mLeniency = leniency;
+        mDebugMode = debugMode;
+    }
+
+    /**
+     * Configure the comparer for a frame size, using the same box layout as
+     * Comparer: any pixels left over are collected in an extra, smaller, box at
+     * the end of each row and column. Arrays are only reallocated if the
+     * number of boxes changes. Any previous frame is forgotten.
+     *
+     * @param width
+     *            Width of the images.
+     * @param height
+     *            Height of the images.
+     * @throws IllegalArgumentException
+     *             if width or height is less than one.
+     */
+    public void configure(int width, int height) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Image must not be empty");
+
+        mWidth = width;
+        mHeight = height;
+
+        mXBoxes = Math.min(mRequestedXBoxes, width);
+        mXPixelsPerBox = width / mXBoxes;
+        mXLeftOver = width - (mXBoxes * mXPixelsPerBox);
+        if (mXLeftOver > 0) mXBoxes++;
+
+        mYBoxes = Math.min(mRequestedYBoxes, height);
+        mYPixelsPerBox = height / mYBoxes;
+        mYLeftOver = height - (mYBoxes * mYPixelsPerBox);
+        if (mYLeftOver > 0) mYBoxes++;
+
+        int boxes = mXBoxes * mYBoxes;
+        if (mCurrentMeans == null || mCurrentMeans.length != boxes) {
+            mCurrentMeans = new int[boxes];
+            mPreviousMeans = new int[boxes];
+            mVariance = new int[boxes];
+        }
+        reset();
+    }
+
+    /**
+     * Forget the previous frame, so that the next frame is not compared.
+     */
+    public void reset() {
+        mHasPrevious = false;
+        mDifferent = false;
+        for (int i = 0; i < mVariance.length; i++) {
+            mVariance[i] = 0;
+        }
+    }
+
+    /**
+     * Is the comparer configured for images of this size.
+     *
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @return True if the comparer can be used with images of this size.
+     */
+    public boolean isConfiguredFor(int width, int height) {
+        return mCurrentMeans != null && mWidth == width && mHeight == height;
+    }
+
+    private int getBoxWidth(int xBox) {
+        return (xBox == (mXBoxes - 1) && mXLeftOver > 0) ? mXLeftOver : mXPixelsPerBox;
+    }
+
+    private int getBoxHeight(int yBox) {
+        return (yBox == (mYBoxes - 1) && mYLeftOver > 0) ? mYLeftOver : mYPixelsPerBox;
+    }
+
+    private void calculateMeans(int[] map, int[] means) {
+        for (int yBox = 0, y = 0, box = 0; yBox < mYBoxes; yBox++, box += mXBoxes) {
+            int yPix = getBoxHeight(yBox);
+            for (int xBox = 0; xBox < mXBoxes; xBox++) {
+                means[box + xBox] = 0;
+            }
+            // Walk the image row by row, adding each run of pixels to its box
+            for (int row = 0; row < yPix; row++, y++) {
+                for (int xBox = 0, xy = y * mWidth; xBox < mXBoxes; xBox++) {
+                    int sum = 0;
+                    for (int end = xy + getBoxWidth(xBox); xy < end; xy++) {
+                        sum += map[xy];
+                    }
+                    means[box + xBox] += sum;
+                }
+            }
+            for (int xBox = 0; xBox < mXBoxes; xBox++) {
+                means[box + xBox] /= (getBoxWidth(xBox) * yPix);
+            }
+        }
+    }
+
+    private void calculateMeans(IntegralImage image, int[] means) {
+        for (int yBox = 0, top = 0, box = 0; yBox < mYBoxes; top += getBoxHeight(yBox), yBox++) {
+            int bottom = top + getBoxHeight(yBox);
+            for (int xBox = 0, left = 0; xBox < mXBoxes; left += getBoxWidth(xBox), xBox++, box++) {
+                means[box] = image.getMean(left, top, left + getBoxWidth(xBox), bottom);
+            }
+        }
+    }
+
+    /**
+     * Calculate the box means of an image and compare them with those of the
+     * previous image, which this image then replaces.
+     *
+     * @param map
+     *            integer array of the image.
+     * @return True if any box has changed by more than the leniency. False
+     *         for the first image after configuration.
+     * @throws NullPointerException
+     *             if map is NULL.
+     * @throws IllegalStateException
+     *             if the comparer has not been configured.
+     */
+    public boolean update(int[] map) {
+        if (map == null) throw new NullPointerException();
+        if (mCurrentMeans == null) throw new IllegalStateException("Comparer has not been configured");
+
+        calculateMeans(map, mCurrentMeans);
+        return compareMeans();
+    }
+
+    /**
+     * Read the box means of an image from its summed-area table, in constant
+     * time per box, and compare them with those of the previous image, which
+     * this image then replaces. Many comparers with different grids can share
+     * the same table.
+     *
+     * @param image
+     *            IntegralImage built from the image.
+     * @return True if any box has changed by more than the leniency. False
+     *         for the first image after configuration.
+     * @throws NullPointerException
+     *             if image is NULL.
+     * @throws IllegalStateException
+     *             if the comparer has not been configured.
+     * @throws IllegalArgumentException
+     *             if the image is not the size the comparer is configured for.
+     */
+    public boolean update(IntegralImage image) {
+        if (image == null) throw new NullPointerException();
+        if (mCurrentMeans == null) throw new IllegalStateException("Comparer has not been configured");
+        if (!isConfiguredFor(image.getWidth(), image.getHeight())) {
+            throw new IllegalArgumentException("Image size does not match comparer");
+        }
+
+        calculateMeans(image, mCurrentMeans);
+        return compareMeans();
+    }
+
+    private boolean compareMeans() {
+        boolean different = false;
+        if (mHasPrevious) {
+            for (int i = 0; i < mCurrentMeans.length; i++) {
+                int diff = Math.abs(mCurrentMeans[i] - mPreviousMeans[i]);
+                mVariance[i] = diff;
+                // the difference in a certain region has passed the threshold
+                // value
+                if (diff > mLeniency) different = true;
+            }
+        }
+
+        // This image's means become the previous means, without copying
+        int[] previous = mPreviousMeans;
+        mPreviousMeans = mCurrentMeans;
+        mCurrentMeans = previous;
+        mHasPrevious = true;
+        mDifferent = different;
+        return different;
+    }
+
+    /**
+     * Given the int array of an image, outline the boxes that were different
+     * in the last comparison.
+     *
+     * @param data
+     *            int array of an image.
+     * @throws NullPointerException
+     *             if data int array is NULL.
+     */
+    public void paintDifferences(int[] data) {
+        if (data == null) throw new NullPointerException();
+        if (mVariance == null) return;
+
+        for (int yBox = 0, top = 0, box = 0; yBox < mYBoxes; top += getBoxHeight(yBox), yBox++) {
+            for (int xBox = 0, left = 0; xBox < mXBoxes; left += getBoxWidth(xBox), xBox++, box++) {
+                if (mVariance[box] > mLeniency) {
+                    paint(data, left, top, getBoxWidth(xBox), getBoxHeight(yBox), Color.RED);
+                }
+            }
+        }
+    }
+
+    private void paint(int[] data, int left, int top, int xPix, int yPix, int color) {
+        for (int y = 0; y < yPix; y++) {
+            int iy = (top + y) * mWidth + left;
+            for (int x = 0; x < xPix; x++) {
+                if (y == 0 || y == (yPix - 1) || x == 0 || x == (xPix - 1)) data[iy + x] = color;
+            }
+        }
+    }
+
+    /**
+     * Number of X Boxes.
+     *
+     * @return int representing the number of X boxes.
+     */
+    public int getCompareX() {
+        return mXBoxes;
+    }
+
+    /**
+     * Number of Y Boxes.
+     *
+     * @return int representing the number of Y boxes.
+     */
+    public int getCompareY() {
+        return mYBoxes;
+    }
+
+    /**
+     * Difference between the means of a box in the last two images.
+     *
+     * @param xBox
+     *            Column of the box.
+     * @param yBox
+     *            Row of the box.
+     * @return int representing the difference of the box means.
+     */
+    public int getDifference(int xBox, int yBox) {
+        return mVariance[(yBox * mXBoxes) + xBox];
+    }
+
+    /**
+     * Leniency of the box comparison.
+     *
+     * @return int representing the leniency.
+     */
+    public int getLeniency() {
+        return mLeniency;
+    }
+
+    /**
+     * Debug mode of the comparer.
+     *
+     * @return int representing the debug mode.
+     */
+    public int getDebugMode() {
+        return mDebugMode;
+    }
+
+    /**
+     * Were the last two images different.
+     *
+     * @return True if the last two images were different.
+     */
+    public boolean isDifferent() {
+        return mDifferent;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder();
+        if (mVariance == null) return output.toString();
+        for (int y = 0, box = 0; y < mYBoxes; y++) {
+            output.append('|');
+            for (int x = 0; x < mXBoxes; x++, box++) {
+                int diff = mVariance[box];
+                if (mDebugMode == 1) output.append((diff > mLeniency) ? 'X' : ' ');
+                if (mDebugMode == 2) output.append(diff + ((x < (mXBoxes - 1)) ? "," : ""));
+            }
+            output.append("|\n");
+        }
+        return output.toString();
+    }
+}
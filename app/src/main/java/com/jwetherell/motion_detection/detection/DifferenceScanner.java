@@ -0,0 +1,67 @@
+package com.jwetherell.motion_detection.detection;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class counts the pixels that differ between two images in decision-only
+ * mode: rows are visited in an interleaved (coarse to fine) order, so that
+ * stopping early still samples the whole image evenly, and scanning stops as
+ * soon as the count passes a limit. Neither image is modified.
+ */
+final class DifferenceScanner {
+
+    private DifferenceScanner() {
+    }
+
+    /**
+     * Count the different pixels in a range of rows, stopping once the total
+     * passes limit. Rows are visited in the order 0, n, 2n... then n/2, 3n/2...
+     * and so on, where n is the largest power of two no greater than the
+     * number of rows.
+     *
+     * @param current
+     *            integer array of the current image.
+     * @param previous
+     *            integer array of the previous image.
+     * @param width
+     *            Width of the images.
+     * @param pixelThreshold
+     *            Difference at which a pixel is counted as different.
+     * @param limit
+     *            Scanning stops as soon as the total is greater than this.
+     * @param firstRow
+     *            First row to scan.
+     * @param endRow
+     *            Row after the last row to scan.
+     * @param total
+     *            Running total, shared between all bands of the same image so
+     *            that any band reaching the limit stops the others.
+     */
+    static void countUntilDifferent(int[] current, int[] previous, int width, int pixelThreshold, int limit,
+            int firstRow, int endRow, AtomicInteger total) {
+        final int rows = endRow - firstRow;
+        if (rows <= 0) return;
+
+        final int step = Integer.highestOneBit(rows);
+        for (int row = firstRow; row < endRow; row += step) {
+            if (addRow(current, previous, width, pixelThreshold, limit, row, total)) return;
+        }
+        for (int offset = step >> 1; offset > 0; offset >>= 1) {
+            for (int row = firstRow + offset; row < endRow; row += offset << 1) {
+                if (addRow(current, previous, width, pixelThreshold, limit, row, total)) return;
+            }
+        }
+    }
+
+    // returns true once enough pixels differ to make a decision
+    private static boolean addRow(int[] current, int[] previous, int width, int pixelThreshold, int limit, int row,
+            AtomicInteger total) {
+        if (total.get() > limit) return true; // another band may have already decided
+
+        int count = 0;
+        for (int ij = row * width, end = ij + width; ij < end; ij++) {
+            if (Math.abs((0xff & current[ij]) - (0xff & previous[ij])) >= pixelThreshold) count++;
+        }
+        return count > 0 && total.addAndGet(count) > limit;
+    }
+}
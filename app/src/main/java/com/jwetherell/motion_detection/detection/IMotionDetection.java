@@ -1,7 +1,10 @@
 package com.jwetherell.motion_detection.detection;
 
 /**
- * This interface is used to represent a class that can detect motion
+ * This interface is used to represent a class that can detect motion. Each
+ * instance keeps its own previous frame, so several detectors can run at once
+ * (e.g., at different resolutions), and implementations must be safe to call
+ * from any thread.
  * 
  * @author Justin Wetherell <phishman3579@gmail.com>
  */
@@ -28,4 +31,19 @@ public interface IMotionDetection {
      *             if data integer array is NULL.
      */
     public boolean detect(int[] data, int width, int height);
+
+    /**
+     * Detect motion directly from a camera preview frame.
+     * 
+     * @param yuv420sp
+     *            byte array representing a YUV420SP (NV21) image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @return boolean True is there is motion.
+     * @throws NullPointerException
+     *             if yuv420sp byte array is NULL.
+     */
+    public boolean detect(byte[] yuv420sp, int width, int height);
 }
@@ -0,0 +1,48 @@
+package com.jwetherell.motion_detection.detection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface is used to represent a class that can detect motion and
+ * describe it, as well as simply reporting whether there was any.
+ */
+public interface IMotionResultDetection extends IMotionDetection {
+
+    /**
+     * Detect motion directly from a camera preview frame, and describe it.
+     *
+     * @param yuv420sp
+     *            byte array representing a YUV420SP (NV21) image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param result
+     *            MotionResult to fill; reused between frames.
+     * @return boolean True is there is motion.
+     * @throws NullPointerException
+     *             if yuv420sp byte array or result is NULL.
+     */
+    public boolean detect(byte[] yuv420sp, int width, int height, MotionResult result);
+
+    /**
+     * Detect motion directly from a luma (Y) plane, without copying it, and
+     * describe it.
+     *
+     * @param luma
+     *            ByteBuffer holding the luma plane from its current position,
+     *            which is not changed.
+     * @param rowStride
+     *            Distance in bytes between the start of each row.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param result
+     *            MotionResult to fill; reused between frames.
+     * @return boolean True is there is motion.
+     * @throws NullPointerException
+     *             if luma or result is NULL.
+     */
+    public boolean detect(ByteBuffer luma, int rowStride, int width, int height, MotionResult result);
+}
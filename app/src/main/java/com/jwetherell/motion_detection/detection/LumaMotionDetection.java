@@ -2,6 +2,12 @@ package com.jwetherell.motion_detection.detection;
 
 import android.graphics.Color;
 
+import com.jwetherell.motion_detection.image.ImageProcessing;
+import com.jwetherell.motion_detection.image.ParallelFrameProcessor;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 //import android.util.Log;
 
@@ -15,34 +21,102 @@ public class LumaMotionDetection implements IMotionDetection {
 
     // private static final String TAG = "LumaMotionDetection";
 
-    // Specific settings
-    private static final int mPixelThreshold = 50; // Difference in luma value
-    private static final int mThreshold = 10000; // Number of different pixels
+    // Specific settings (defaults)
+    private static final int mDefaultPixelThreshold = 50; // Difference in luma value
+    private static final int mDefaultThreshold = 10000; // Number of different pixels
+
+    // The previous and current frames are held in two buffers that are
+    // swapped after each frame, so no frame is ever cloned
+    private int[] mPrevious = null;
+    private int[] mCurrent = null;
+    private int mPreviousWidth = 0;
+    private int mPreviousHeight = 0;
+
+    private final int mPixelThreshold;
+    private final int mThreshold;
+    private final boolean mDecisionOnly;
+    private final ParallelFrameProcessor mProcessor;
+    private final AtomicInteger mDecisionCount = new AtomicInteger();
+
+    /**
+     * Create a detector that compares frames sequentially.
+     */
+    public LumaMotionDetection() {
+        this(null);
+    }
 
-    private static int[] mPrevious = null;
-    private static int mPreviousWidth = 0;
-    private static int mPreviousHeight = 0;
+    /**
+     * Create a detector that compares bands of rows in parallel.
+     * 
+     * @param processor
+     *            ParallelFrameProcessor to compare frames with, or null to
+     *            compare sequentially.
+     */
+    public LumaMotionDetection(ParallelFrameProcessor processor) {
+        this(mDefaultPixelThreshold, mDefaultThreshold, false, processor);
+    }
+
+    /**
+     * Create a detector with custom thresholds. In decision-only mode, frames
+     * are scanned in an interleaved row order and scanning stops as soon as
+     * enough pixels differ, and the frame passed to detect is never painted.
+     * 
+     * @param pixelThreshold
+     *            Difference at which a pixel is counted as different.
+     * @param threshold
+     *            Number of pixels that must differ for there to be motion.
+     * @param decisionOnly
+     *            True to stop scanning as soon as motion is certain.
+     * @param processor
+     *            ParallelFrameProcessor to compare frames with, or null to
+     *            compare sequentially.
+     */
+    public LumaMotionDetection(int pixelThreshold, int threshold, boolean decisionOnly,
+            ParallelFrameProcessor processor) {
+        mPixelThreshold = pixelThreshold;
+        mThreshold = threshold;
+        mDecisionOnly = decisionOnly;
+        mProcessor = processor;
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int[] getPrevious() {
+    public synchronized int[] getPrevious() {
         return ((mPrevious != null) ? mPrevious.clone() : null);
     }
 
-    protected static boolean isDifferent(int[] first, int width, int height) {
-        if (first == null) throw new NullPointerException();
+    /**
+     * Get the previous image without copying it. The view is only valid until
+     * the next call to detect, which will overwrite its contents.
+     * 
+     * @return read-only IntBuffer of previous image.
+     */
+    public synchronized IntBuffer getPreviousView() {
+        return ((mPrevious != null) ? IntBuffer.wrap(mPrevious).asReadOnlyBuffer() : null);
+    }
 
-        if (mPrevious == null) return false;
-        if (first.length != mPrevious.length) return true;
-        if (mPreviousWidth != width || mPreviousHeight != height) return true;
+    private int[] getCurrentBuffer(int size) {
+        if (mCurrent == null || mCurrent.length != size) mCurrent = new int[size];
+        return mCurrent;
+    }
+
+    private void swapBuffers(int width, int height) {
+        int[] previous = mPrevious;
+        mPrevious = mCurrent;
+        mCurrent = previous;
+        mPreviousWidth = width;
+        mPreviousHeight = height;
+    }
 
+    private static int countDifferentPixels(int[] current, int[] previous, int[] output, int width,
+            int pixelThreshold, int firstRow, int endRow) {
         int totDifferentPixels = 0;
-        for (int i = 0, ij = 0; i < height; i++) {
+        for (int i = firstRow, ij = firstRow * width; i < endRow; i++) {
             for (int j = 0; j < width; j++, ij++) {
-                int pix = (0xff & (first[ij]));
-                int otherPix = (0xff & (mPrevious[ij]));
+                int pix = (0xff & (current[ij]));
+                int otherPix = (0xff & (previous[ij]));
 
                 // Catch any pixels that are out of range
                 if (pix < 0) pix = 0;
@@ -50,13 +124,56 @@ public class LumaMotionDetection implements IMotionDetection {
                 if (otherPix < 0) otherPix = 0;
                 if (otherPix > 255) otherPix = 255;
 
-                if (Math.abs(pix - otherPix) >= mPixelThreshold) {
+                if (Math.abs(pix - otherPix) >= pixelThreshold) {
                     totDifferentPixels++;
                     // Paint different pixel red
-                    first[ij] = Color.RED;
+                    if (output != null) output[ij] = Color.RED;
                 }
             }
         }
+        return totDifferentPixels;
+    }
+
+    protected boolean isDifferent(final int[] current, final int[] output, final int width, int height) {
+        if (current == null) throw new NullPointerException();
+
+        if (mPrevious == null) return false;
+        if (current.length != mPrevious.length) return true;
+        if (mPreviousWidth != width || mPreviousHeight != height) return true;
+
+        final int[] previous = mPrevious;
+        final int pixelThreshold = mPixelThreshold;
+        int totDifferentPixels;
+        if (mDecisionOnly) {
+            // Stop as soon as the result is known; bands share one running total
+            final int limit = mThreshold;
+            final AtomicInteger count = mDecisionCount;
+            count.set(0);
+            if (mProcessor != null) {
+                mProcessor.process(width, height, new ParallelFrameProcessor.RowTask() {
+                    @Override
+                    public int processRows(int firstRow, int endRow) {
+                        DifferenceScanner.countUntilDifferent(current, previous, width, pixelThreshold, limit, firstRow,
+                                endRow, count);
+                        return 0;
+                    }
+                });
+            } else {
+                DifferenceScanner.countUntilDifferent(current, previous, width, pixelThreshold, limit, 0, height,
+                        count);
+            }
+            totDifferentPixels = count.get();
+        } else if (mProcessor != null) {
+            // Different pixel counts are calculated per band, then summed
+            totDifferentPixels = mProcessor.process(width, height, new ParallelFrameProcessor.RowTask() {
+                @Override
+                public int processRows(int firstRow, int endRow) {
+                    return countDifferentPixels(current, previous, output, width, pixelThreshold, firstRow, endRow);
+                }
+            });
+        } else {
+            totDifferentPixels = countDifferentPixels(current, previous, output, width, pixelThreshold, 0, height);
+        }
         if (totDifferentPixels <= 0) totDifferentPixels = 1;
         boolean different = totDifferentPixels > mThreshold;
         /*
@@ -69,35 +186,53 @@ public class LumaMotionDetection implements IMotionDetection {
         return different;
     }
 
-    /**
-     * Detect motion using comparing luma values. {@inheritDoc}
-     */
-    @Override
-    public boolean detect(int[] luma, int width, int height) {
-        if (luma == null) throw new NullPointerException();
-
-        int[] original = luma.clone();
-
+    private boolean detectCurrent(int[] output, int width, int height) {
         // Create the "mPrevious" picture, the one that will be used to check
         // the next frame against.
         if (mPrevious == null) {
-            mPrevious = original;
-            mPreviousWidth = width;
-            mPreviousHeight = height;
+            swapBuffers(width, height);
             // Log.i(TAG, "Creating background image");
             return false;
         }
 
         // long bDetection = System.currentTimeMillis();
-        boolean motionDetected = isDifferent(luma, width, height);
+        boolean motionDetected = isDifferent(mCurrent, output, width, height);
         // long aDetection = System.currentTimeMillis();
         // Log.d(TAG, "Detection "+(aDetection-bDetection));
 
         // Replace the current image with the previous.
-        mPrevious = original;
-        mPreviousWidth = width;
-        mPreviousHeight = height;
+        swapBuffers(width, height);
 
         return motionDetected;
     }
+
+    /**
+     * Detect motion using comparing luma values. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(int[] luma, int width, int height) {
+        if (luma == null) throw new NullPointerException();
+
+        // Keep an unpainted copy of this frame to compare the next one against
+        System.arraycopy(luma, 0, getCurrentBuffer(luma.length), 0, luma.length);
+        return detectCurrent(mDecisionOnly ? null : luma, width, height);
+    }
+
+    /**
+     * Detect motion by decoding and comparing luma values. The decoded image
+     * becomes the next previous image directly, so nothing is copied.
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(byte[] yuv420sp, int width, int height) {
+        if (yuv420sp == null) throw new NullPointerException();
+
+        int[] current = getCurrentBuffer(width * height);
+        if (mProcessor != null) {
+            ImageProcessing.decodeYUV420SPtoLuma(yuv420sp, width, height, current, mProcessor);
+        } else {
+            ImageProcessing.decodeYUV420SPtoLuma(yuv420sp, width, height, current);
+        }
+        return detectCurrent(null, width, height);
+    }
 }
@@ -0,0 +1,343 @@
+package com.jwetherell.motion_detection.detection;
+
+/**
+ * This class holds the details of a single motion detection: the fraction of
+ * the image that changed, which blocks of a grid over the image changed, and
+ * bounding boxes around each connected region of changed blocks. A result is
+ * meant to be reused for every frame; its arrays are only reallocated when
+ * the analysis size changes, so filling it allocates nothing.
+ *
+ * Results are filled by an {@link IMotionResultDetection}, and must not be
+ * shared between threads while a detection is in progress.
+ */
+public class MotionResult {
+
+    private static final int mMaxRegions = 16; // Regions past this are merged into the last one
+
+    private final int mXBlocks;
+    private final int mYBlocks;
+    private final float mBlockThreshold;
+
+    private boolean mMotion = false;
+    private float mChangedFraction = 0;
+    private int mChangedBlocks = 0;
+
+    // Analysis geometry: block edges are in sampled pixels, boxes in frame pixels
+    private int mSampledWidth = 0;
+    private int mSampledHeight = 0;
+    private int mScale = 1;
+    private final int[] mColumnEnds;
+    private final int[] mRowEnds;
+
+    // Changed pixels in each row of each block column, so that bands of rows
+    // can be counted in parallel without sharing counters
+    private int[] mRowCounts = null;
+    private final int[] mBlockCounts;
+    private final long[] mBlockBits;
+
+    private int mRegionCount = 0;
+    private final int[] mRegionLeft = new int[mMaxRegions];
+    private final int[] mRegionTop = new int[mMaxRegions];
+    private final int[] mRegionRight = new int[mMaxRegions];
+    private final int[] mRegionBottom = new int[mMaxRegions];
+    private final int[] mRegionStack;
+    private final boolean[] mVisited;
+
+    /**
+     * Create a result with an 8x8 grid, where a block has changed if 5% of its
+     * pixels have.
+     */
+    public MotionResult() {
+        this(8, 8, 0.05f);
+    }
+
+    /**
+     * Create a result with a custom grid.
+     *
+     * @param xBlocks
+     *            Number of blocks across the image.
+     * @param yBlocks
+     *            Number of blocks down the image.
+     * @param blockThreshold
+     *            Fraction (0-1) of a block's pixels that must change for the
+     *            block to have changed.
+     * @throws IllegalArgumentException
+     *             if xBlocks or yBlocks is less than one.
+     */
+    public MotionResult(int xBlocks, int yBlocks, float blockThreshold) {
+        if (xBlocks < 1 || yBlocks < 1) throw new IllegalArgumentException("At least one block is required");
+
+        mXBlocks = xBlocks;
+        mYBlocks = yBlocks;
+        mBlockThreshold = blockThreshold;
+        mColumnEnds = new int[xBlocks];
+        mRowEnds = new int[yBlocks];
+        mBlockCounts = new int[xBlocks * yBlocks];
+        mBlockBits = new long[((xBlocks * yBlocks) + 63) / 64];
+        mRegionStack = new int[xBlocks * yBlocks];
+        mVisited = new boolean[xBlocks * yBlocks];
+    }
+
+    /**
+     * Prepare to count a frame. Blocks are spread as evenly as possible over
+     * the sampled image, so they may differ in size by one pixel.
+     *
+     * @param sampledWidth
+     *            Width of the image being analysed.
+     * @param sampledHeight
+     *            Height of the image being analysed.
+     * @param scale
+     *            Size of each analysed pixel in the original frame.
+     */
+    void begin(int sampledWidth, int sampledHeight, int scale) {
+        if (sampledWidth != mSampledWidth || sampledHeight != mSampledHeight) {
+            for (int x = 0; x < mXBlocks; x++) {
+                mColumnEnds[x] = (int) ((long) (x + 1) * sampledWidth / mXBlocks);
+            }
+            for (int y = 0; y < mYBlocks; y++) {
+                mRowEnds[y] = (int) ((long) (y + 1) * sampledHeight / mYBlocks);
+            }
+            if (mRowCounts == null || mRowCounts.length != sampledHeight * mXBlocks) {
+                mRowCounts = new int[sampledHeight * mXBlocks];
+            }
+            mSampledWidth = sampledWidth;
+            mSampledHeight = sampledHeight;
+        }
+        mScale = scale;
+    }
+
+    /**
+     * Get the end column (exclusive, in sampled pixels) of each block column.
+     *
+     * @return int array of block column ends; must not be changed.
+     */
+    int[] getColumnEnds() {
+        return mColumnEnds;
+    }
+
+    /**
+     * Get the array that detectors fill with the number of changed pixels in
+     * each block column of each row, at index (row * xBlocks) + xBlock.
+     *
+     * @return int array of per-row block counts.
+     */
+    int[] getRowCounts() {
+        return mRowCounts;
+    }
+
+    /**
+     * Record that a frame could not be compared (e.g., it is the first frame),
+     * so nothing has changed unless the detector reported motion anyway.
+     *
+     * @param motion
+     *            True if the detector reported motion.
+     */
+    void clear(boolean motion) {
+        mMotion = motion;
+        mChangedFraction = motion ? 1 : 0;
+        mChangedBlocks = 0;
+        mRegionCount = 0;
+        for (int i = 0; i < mBlockBits.length; i++) {
+            mBlockBits[i] = 0;
+        }
+    }
+
+    /**
+     * Finish a frame, once every row count has been filled.
+     *
+     * @param motion
+     *            True if the detector reported motion.
+     * @param changedPixels
+     *            Number of changed pixels in the sampled image.
+     */
+    void finish(boolean motion, int changedPixels) {
+        clear(motion);
+        int totalPixels = mSampledWidth * mSampledHeight;
+        mChangedFraction = totalPixels > 0 ? (float) changedPixels / totalPixels : 0;
+
+        // Sum each block's rows, then mark blocks with enough changed pixels
+        for (int yBlock = 0, row = 0, block = 0; yBlock < mYBlocks; yBlock++) {
+            for (int xBlock = 0; xBlock < mXBlocks; xBlock++) {
+                mBlockCounts[block + xBlock] = 0;
+            }
+            for (; row < mRowEnds[yBlock]; row++) {
+                for (int xBlock = 0, r = row * mXBlocks; xBlock < mXBlocks; xBlock++, r++) {
+                    mBlockCounts[block + xBlock] += mRowCounts[r];
+                }
+            }
+            int blockHeight = mRowEnds[yBlock] - (yBlock > 0 ? mRowEnds[yBlock - 1] : 0);
+            for (int xBlock = 0; xBlock < mXBlocks; xBlock++, block++) {
+                int blockWidth = mColumnEnds[xBlock] - (xBlock > 0 ? mColumnEnds[xBlock - 1] : 0);
+                int blockPixels = blockWidth * blockHeight;
+                if (blockPixels > 0 && mBlockCounts[block] > blockPixels * mBlockThreshold) {
+                    mBlockBits[block >> 6] |= 1L << block;
+                    mChangedBlocks++;
+                }
+            }
+        }
+
+        if (mChangedBlocks > 0) findRegions();
+    }
+
+    private boolean isBlockChanged(int block) {
+        return (mBlockBits[block >> 6] & (1L << block)) != 0;
+    }
+
+    // Group changed blocks into 4-connected regions, using a preallocated stack
+    private void findRegions() {
+        final boolean[] visited = mVisited;
+        final int[] stack = mRegionStack;
+        for (int i = 0; i < visited.length; i++) {
+            visited[i] = false;
+        }
+
+        for (int start = 0; start < visited.length; start++) {
+            if (visited[start] || !isBlockChanged(start)) continue;
+
+            int region = Math.min(mRegionCount, mMaxRegions - 1);
+            if (region == mRegionCount) {
+                mRegionLeft[region] = Integer.MAX_VALUE;
+                mRegionTop[region] = Integer.MAX_VALUE;
+                mRegionRight[region] = 0;
+                mRegionBottom[region] = 0;
+                mRegionCount++;
+            }
+
+            int size = 0;
+            stack[size++] = start;
+            visited[start] = true;
+            while (size > 0) {
+                int block = stack[--size];
+                int xBlock = block % mXBlocks;
+                int yBlock = block / mXBlocks;
+                mRegionLeft[region] = Math.min(mRegionLeft[region], xBlock > 0 ? mColumnEnds[xBlock - 1] : 0);
+                mRegionTop[region] = Math.min(mRegionTop[region], yBlock > 0 ? mRowEnds[yBlock - 1] : 0);
+                mRegionRight[region] = Math.max(mRegionRight[region], mColumnEnds[xBlock]);
+                mRegionBottom[region] = Math.max(mRegionBottom[region], mRowEnds[yBlock]);
+
+                if (xBlock > 0) size = push(block - 1, stack, size);
+                if (xBlock < mXBlocks - 1) size = push(block + 1, stack, size);
+                if (yBlock > 0) size = push(block - mXBlocks, stack, size);
+                if (yBlock < mYBlocks - 1) size = push(block + mXBlocks, stack, size);
+            }
+        }
+    }
+
+    private int push(int block, int[] stack, int size) {
+        if (mVisited[block] || !isBlockChanged(block)) return size;
+        mVisited[block] = true;
+        stack[size] = block;
+        return size + 1;
+    }
+
+    /**
+     * Did the detector report motion.
+     *
+     * @return True if there was motion.
+     */
+    public boolean isMotion() {
+        return mMotion;
+    }
+
+    /**
+     * Get the fraction of the analysed image that changed.
+     *
+     * @return float between 0 and 1.
+     */
+    public float getChangedFraction() {
+        return mChangedFraction;
+    }
+
+    /**
+     * Number of blocks across the image.
+     *
+     * @return int representing the number of X blocks.
+     */
+    public int getBlocksX() {
+        return mXBlocks;
+    }
+
+    /**
+     * Number of blocks down the image.
+     *
+     * @return int representing the number of Y blocks.
+     */
+    public int getBlocksY() {
+        return mYBlocks;
+    }
+
+    /**
+     * Get the number of blocks that changed.
+     *
+     * @return int number of changed blocks.
+     */
+    public int getChangedBlocks() {
+        return mChangedBlocks;
+    }
+
+    /**
+     * Did a block change.
+     *
+     * @param xBlock
+     *            Column of the block.
+     * @param yBlock
+     *            Row of the block.
+     * @return True if enough of the block's pixels changed.
+     */
+    public boolean isBlockChanged(int xBlock, int yBlock) {
+        return isBlockChanged((yBlock * mXBlocks) + xBlock);
+    }
+
+    /**
+     * Get the number of connected regions of changed blocks.
+     *
+     * @return int number of regions (at most 16).
+     */
+    public int getRegionCount() {
+        return mRegionCount;
+    }
+
+    /**
+     * Get the left edge of a region's bounding box.
+     *
+     * @param region
+     *            Index of the region.
+     * @return int left column, in frame pixels.
+     */
+    public int getRegionLeft(int region) {
+        return mRegionLeft[region] * mScale;
+    }
+
+    /**
+     * Get the top edge of a region's bounding box.
+     *
+     * @param region
+     *            Index of the region.
+     * @return int top row, in frame pixels.
+     */
+    public int getRegionTop(int region) {
+        return mRegionTop[region] * mScale;
+    }
+
+    /**
+     * Get the right edge of a region's bounding box.
+     *
+     * @param region
+     *            Index of the region.
+     * @return int column after the right edge, in frame pixels.
+     */
+    public int getRegionRight(int region) {
+        return mRegionRight[region] * mScale;
+    }
+
+    /**
+     * Get the bottom edge of a region's bounding box.
+     *
+     * @param region
+     *            Index of the region.
+     * @return int row after the bottom edge, in frame pixels.
+     */
+    public int getRegionBottom(int region) {
+        return mRegionBottom[region] * mScale;
+    }
+}
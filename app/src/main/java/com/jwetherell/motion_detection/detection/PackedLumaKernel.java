@@ -0,0 +1,114 @@
+package com.jwetherell.motion_detection.detection;
+
+/**
+ * This class compares luma values eight at a time, packed as unsigned bytes
+ * into longs, using word-parallel (SWAR) arithmetic: each long is treated as
+ * eight independent 8-bit lanes, and carries and borrows are kept from
+ * crossing between lanes with masks. The absolute difference of every lane is
+ * calculated and compared with a threshold without unpacking, and the lanes
+ * over the threshold are counted with a single population count.
+ */
+final class PackedLumaKernel {
+
+    private static final long mOnes = 0x0101010101010101L; // 1 in every lane
+    private static final long mHighBits = 0x8080808080808080L; // Top bit of every lane
+    private static final long mLowBits = 0x7f7f7f7f7f7f7f7fL; // All but the top bit of every lane
+
+    private PackedLumaKernel() {
+    }
+
+    /**
+     * Get the lane constant used to compare differences with a threshold.
+     *
+     * @param pixelThreshold
+     *            Difference at which a pixel is counted as different, from 1
+     *            to 128.
+     * @return long to pass to the counting methods.
+     * @throws IllegalArgumentException
+     *             if pixelThreshold is out of range.
+     */
+    static long getThresholdBias(int pixelThreshold) {
+        if (pixelThreshold < 1 || pixelThreshold > 128) throw new IllegalArgumentException("Threshold out of range");
+
+        return (0x80 - pixelThreshold) * mOnes;
+    }
+
+    // Lane-wise a - b, wrapping within each lane
+    private static long subtract(long a, long b) {
+        return ((a | mHighBits) - (b & mLowBits)) ^ ((a ^ ~b) & mHighBits);
+    }
+
+    /**
+     * Count the lanes of two packed words whose absolute difference is at
+     * least the threshold.
+     *
+     * @param a
+     *            eight packed luma values.
+     * @param b
+     *            eight packed luma values.
+     * @param thresholdBias
+     *            lane constant from {@link #getThresholdBias(int)}.
+     * @return int between 0 and 8.
+     */
+    static int countDifferent(long a, long b, long thresholdBias) {
+        long forward = subtract(a, b);
+        // The top bit of each lane is set where a < b (i.e., the lane borrowed)
+        long borrow = ((~a & b) | ((~a | b) & forward)) & mHighBits;
+        long borrowMask = (borrow >>> 7) * 0xff; // 0xff in every lane that borrowed
+        long difference = (forward & ~borrowMask) | (subtract(b, a) & borrowMask);
+
+        // Lanes of 128 or more are always over the threshold; adding the bias
+        // to the rest sets their top bit if they reach it, without overflowing
+        long over = (((difference & mLowBits) + thresholdBias) | difference) & mHighBits;
+        return Long.bitCount(over);
+    }
+
+    /**
+     * Count the different luma values in a range of packed words.
+     *
+     * @param current
+     *            packed luma values of the current image.
+     * @param previous
+     *            packed luma values of the previous image.
+     * @param thresholdBias
+     *            lane constant from {@link #getThresholdBias(int)}.
+     * @param from
+     *            first word to compare.
+     * @param to
+     *            word after the last word to compare.
+     * @return int number of different luma values.
+     */
+    static int countDifferent(long[] current, long[] previous, long thresholdBias, int from, int to) {
+        int totDifferentPixels = 0;
+        for (int i = from; i < to; i++) {
+            long pix = current[i];
+            long otherPix = previous[i];
+            if (pix != otherPix) totDifferentPixels += countDifferent(pix, otherPix, thresholdBias);
+        }
+        return totDifferentPixels;
+    }
+
+    /**
+     * Count the different luma values in a range of bytes, one at a time.
+     * Used for the tail of an image that does not fill a whole word.
+     *
+     * @param current
+     *            luma values of the current image.
+     * @param previous
+     *            luma values of the previous image.
+     * @param from
+     *            index of the first value to compare.
+     * @param to
+     *            index after the last value to compare.
+     * @param pixelThreshold
+     *            Difference at which a pixel is counted as different.
+     * @return int number of different luma values.
+     */
+    static int countDifferent(byte[] current, byte[] previous, int from, int to, int pixelThreshold) {
+        int totDifferentPixels = 0;
+        for (int i = from; i < to; i++) {
+            if (Math.abs((0xff & current[i]) - (0xff & previous[i])) >= pixelThreshold) totDifferentPixels++;
+        }
+        return totDifferentPixels;
+    }
+}
@@ -0,0 +1,194 @@
+package com.jwetherell.motion_detection.detection;
+
+import com.jwetherell.motion_detection.image.ImageProcessing;
+
+/**
+ * This class detects motion coarse to fine. Each frame's Y plane is first
+ * reduced to a level 8x smaller in each direction, in which every pixel is
+ * the mean (box filter) of an 8x8 tile, and that level is compared with the
+ * previous frame's. Only tiles whose mean has changed, and the tiles next to
+ * them, are then compared with the previous frame at full resolution, and
+ * the decision is made from the full resolution differences alone. In a
+ * static scene no tile is a candidate, so the per-frame cost is building the
+ * coarse level plus a bulk copy of the Y plane.
+ *
+ * A change that leaves the mean of every tile it touches (almost) unchanged,
+ * such as a texture sliding over a similar texture, is not compared at full
+ * resolution, so some changed pixels can go uncounted. Frames whose changed
+ * pixels only just reach the motion threshold may therefore be missed; the
+ * tests check how often this happens against {@link YuvLumaMotionDetection},
+ * which compares every pixel. Motion is never reported where a full
+ * comparison would not report it.
+ */
+public class PyramidMotionDetection implements IMotionDetection {
+
+    // Specific settings
+    private static final int mTileShift = 3; // Tiles are 8x8 pixels
+    private static final int mTileSize = 1 << mTileShift;
+    private static final int mCoarseThreshold = 4; // Difference in mean tile luma for a candidate tile
+    private static final int mPixelThreshold = 50; // Difference in luma value
+    private static final float mThreshold = 0.01f; // Percentage of image that has changed
+
+    private byte[] mPrevious = null;
+    private byte[] mLumaBytes = null; // Only for frames supplied as int arrays
+    private int[] mCoarse = null;
+    private int[] mPreviousCoarse = null;
+    private boolean[] mCandidates = null;
+    private int mPreviousWidth = 0;
+    private int mPreviousHeight = 0;
+    private int mCoarseWidth = 0; // Whole tiles only; partial tiles at the edges are always compared
+    private int mCoarseHeight = 0;
+    private int mCandidateTiles = 0;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int[] getPrevious() {
+        if (mPrevious == null) return null;
+
+        int[] previous = new int[mPrevious.length];
+        for (int i = 0; i < previous.length; i++) {
+            previous[i] = 0xff & mPrevious[i];
+        }
+        return previous;
+    }
+
+    /**
+     * Get the fraction of whole tiles that were compared at full resolution
+     * for the last frame.
+     *
+     * @return float between 0 and 1.
+     */
+    public synchronized float getCandidateFraction() {
+        int tiles = mCoarseWidth * mCoarseHeight;
+        return (tiles > 0) ? (float) mCandidateTiles / tiles : 0;
+    }
+
+    private boolean resetLevels(int width, int height) {
+        boolean hadPrevious = mPrevious != null;
+        if (mPrevious == null || mPrevious.length != width * height) mPrevious = new byte[width * height];
+        mCoarseWidth = ImageProcessing.getSampledSize(width, mTileSize);
+        mCoarseHeight = ImageProcessing.getSampledSize(height, mTileSize);
+        int coarseSize = mCoarseWidth * mCoarseHeight;
+        if (mCoarse == null || mCoarse.length != coarseSize) {
+            mCoarse = new int[coarseSize];
+            mPreviousCoarse = new int[coarseSize];
+            mCandidates = new boolean[coarseSize];
+        }
+        mPreviousWidth = width;
+        mPreviousHeight = height;
+        return hadPrevious;
+    }
+
+    // Mark every tile whose mean has changed, and its eight neighbours (the
+    // edge of a change often moves a tile's mean too little to be seen)
+    private int markCandidates(int[] coarse, int[] previousCoarse, boolean[] candidates) {
+        final int coarseWidth = mCoarseWidth;
+        final int coarseHeight = mCoarseHeight;
+        for (int t = 0; t < candidates.length; t++) {
+            candidates[t] = false;
+        }
+        int candidateTiles = 0;
+        for (int ty = 0, t = 0; ty < coarseHeight; ty++) {
+            for (int tx = 0; tx < coarseWidth; tx++, t++) {
+                if (Math.abs(coarse[t] - previousCoarse[t]) < mCoarseThreshold) continue;
+
+                for (int ny = Math.max(ty - 1, 0), endY = Math.min(ty + 2, coarseHeight); ny < endY; ny++) {
+                    for (int nx = Math.max(tx - 1, 0), endX = Math.min(tx + 2, coarseWidth); nx < endX; nx++) {
+                        int n = ny * coarseWidth + nx;
+                        if (!candidates[n]) {
+                            candidates[n] = true;
+                            candidateTiles++;
+                        }
+                    }
+                }
+            }
+        }
+        return candidateTiles;
+    }
+
+    private static int countTile(byte[] yuv420sp, byte[] previous, int width, int left, int top, int right,
+            int bottom) {
+        int totDifferentPixels = 0;
+        for (int y = top; y < bottom; y++) {
+            for (int yp = y * width + left, end = y * width + right; yp < end; yp++) {
+                if (Math.abs((0xff & yuv420sp[yp]) - (0xff & previous[yp])) >= mPixelThreshold) totDifferentPixels++;
+            }
+        }
+        return totDifferentPixels;
+    }
+
+    /**
+     * Detect motion by comparing coarse tile means, then the full resolution
+     * pixels of any tiles that have changed. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(byte[] yuv420sp, int width, int height) {
+        if (yuv420sp == null) throw new NullPointerException();
+
+        // Create the "previous" levels, the ones that will be used to check
+        // the next frame against. A change of size counts as motion.
+        if (mPrevious == null || mPreviousWidth != width || mPreviousHeight != height) {
+            boolean sizeChanged = resetLevels(width, height);
+            ImageProcessing.decodeYUV420SPtoLuma(yuv420sp, width, height, mTileSize, mPreviousCoarse);
+            System.arraycopy(yuv420sp, 0, mPrevious, 0, width * height);
+            mCandidateTiles = 0;
+            return sizeChanged;
+        }
+
+        final int[] coarse = mCoarse;
+        final int[] previousCoarse = mPreviousCoarse;
+        final boolean[] candidates = mCandidates;
+        ImageProcessing.decodeYUV420SPtoLuma(yuv420sp, width, height, mTileSize, coarse);
+        mCandidateTiles = markCandidates(coarse, previousCoarse, candidates);
+
+        // Count the full resolution differences of candidate tiles
+        int totDifferentPixels = 0;
+        final int tiledWidth = mCoarseWidth << mTileShift;
+        final int tiledHeight = mCoarseHeight << mTileShift;
+        for (int ty = 0, t = 0; ty < mCoarseHeight; ty++) {
+            int top = ty << mTileShift;
+            for (int tx = 0; tx < mCoarseWidth; tx++, t++) {
+                if (!candidates[t]) continue;
+
+                int left = tx << mTileShift;
+                totDifferentPixels += countTile(yuv420sp, mPrevious, width, left, top, left + mTileSize,
+                        top + mTileSize);
+            }
+        }
+
+        // The right and bottom edges are not covered by the coarse level
+        if (tiledWidth < width) {
+            totDifferentPixels += countTile(yuv420sp, mPrevious, width, tiledWidth, 0, width, tiledHeight);
+        }
+        if (tiledHeight < height) {
+            totDifferentPixels += countTile(yuv420sp, mPrevious, width, 0, tiledHeight, width, height);
+        }
+
+        // Replace the previous levels with this frame's
+        System.arraycopy(yuv420sp, 0, mPrevious, 0, width * height);
+        mPreviousCoarse = coarse;
+        mCoarse = previousCoarse;
+
+        return totDifferentPixels > width * height * mThreshold;
+    }
+
+    /**
+     * Detect motion by comparing an image of luma values. Frames should be
+     * supplied consistently through either this method or
+     * {@link #detect(byte[], int, int)}, as the two do not share the same luma
+     * offset. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(int[] luma, int width, int height) {
+        if (luma == null) throw new NullPointerException();
+
+        int size = width * height;
+        if (mLumaBytes == null || mLumaBytes.length != size) mLumaBytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            mLumaBytes[i] = (byte) luma[i];
+        }
+        return detect(mLumaBytes, width, height);
+    }
+}
@@ -0,0 +1,452 @@
+package com.jwetherell.motion_detection.detection;
+
+import com.jwetherell.motion_detection.image.ImageProcessing;
+import com.jwetherell.motion_detection.image.ParallelFrameProcessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * This class detects motion by comparing the Y (luma) plane of consecutive
+ * YUV420SP (NV21) frames in place. Unlike the other detectors, no colour
+ * conversion is done and pixels are never widened into an int array: each
+ * frame is read once, compared against the stored previous luma bytes, and
+ * copied over them in the same pass.
+ *
+ * Frames can optionally be point-sampled (every n-th pixel of every n-th row)
+ * down towards a minimum analysis size, so that the per-frame cost depends on
+ * the analysis resolution rather than the camera's preview size. Large
+ * analysis sizes can also be compared in parallel bands of rows.
+ *
+ * When a {@link MotionResult} is given, changed pixels are also counted per
+ * block of the result's grid, in the same pass.
+ *
+ * Frames can optionally be compared with the packed (SWAR) backend, which
+ * reads the Y plane into longs with a single bulk copy and compares eight
+ * pixels at a time (see {@link PackedLumaKernel}). It only applies to
+ * decision-only detection of unsampled YUV420SP arrays; sampled frames,
+ * frames compared into a {@link MotionResult} and frames given as
+ * ByteBuffers always use the scalar backend.
+ *
+ * Frames can also be given as a Y plane in a ByteBuffer with any row stride
+ * (e.g., from a Camera2 ImageReader), which is read in place without copying
+ * it into an array first.
+ */
+public class YuvLumaMotionDetection implements IMotionResultDetection {
+
+    // Specific settings
+    private static final int mPixelThreshold = 50; // Difference in luma value
+    private static final float mThreshold = 0.01f; // Percentage of image that has changed
+    private static final long mThresholdBias = PackedLumaKernel.getThresholdBias(mPixelThreshold);
+    private static final int mPackedChunkWords = 256; // Words per "row" when comparing packed words in parallel
+    private static final int mWrappedFrameCount = 4; // Frame buffers to keep packed views of
+
+    private final int mMinimumPixels;
+    private final ParallelFrameProcessor mProcessor;
+    private final boolean mPacked;
+
+    // Packed copies of the current and previous Y planes, swapped after each
+    // frame. The previous bytes are still kept, and remain authoritative.
+    private long[] mPackedCurrent = null;
+    private long[] mPackedPrevious = null;
+    private boolean mPackedPreviousValid = false;
+    // Views of recently seen frames; cameras cycle through a few buffers.
+    // Cleared whenever the frame size changes.
+    private final byte[][] mWrappedFrames = new byte[mWrappedFrameCount][];
+    private final LongBuffer[] mWrappedWords = new LongBuffer[mWrappedFrameCount];
+    private int mNextWrappedFrame = 0;
+
+    private byte[] mPrevious = null;
+    private int mPreviousWidth = 0;
+    private int mPreviousHeight = 0;
+    private int mSampleStep = 1;
+
+    /**
+     * Create a detector that compares every pixel of each frame.
+     */
+    public YuvLumaMotionDetection() {
+        this(0, null);
+    }
+
+    /**
+     * Create a detector that samples frames down towards the given size.
+     *
+     * @param minimumPixels
+     *            Smallest number of pixels to analyse per frame; 0 to analyse
+     *            every pixel.
+     */
+    public YuvLumaMotionDetection(int minimumPixels) {
+        this(minimumPixels, null);
+    }
+
+    /**
+     * Create a detector that samples frames down towards the given size, and
+     * compares bands of rows in parallel.
+     *
+     * @param minimumPixels
+     *            Smallest number of pixels to analyse per frame; 0 to analyse
+     *            every pixel.
+     * @param processor
+     *            ParallelFrameProcessor to compare frames with, or null to
+     *            compare sequentially.
+     */
+    public YuvLumaMotionDetection(int minimumPixels, ParallelFrameProcessor processor) {
+        this(minimumPixels, processor, false);
+    }
+
+    /**
+     * Create a detector that samples frames down towards the given size, and
+     * optionally compares unsampled frames with the packed (SWAR) backend.
+     * Sampled frames, and frames compared into a MotionResult, always use
+     * the scalar backend.
+     *
+     * @param minimumPixels
+     *            Smallest number of pixels to analyse per frame; 0 to analyse
+     *            every pixel.
+     * @param processor
+     *            ParallelFrameProcessor to compare frames with, or null to
+     *            compare sequentially.
+     * @param packed
+     *            True to compare eight packed pixels at a time where possible.
+     */
+    public YuvLumaMotionDetection(int minimumPixels, ParallelFrameProcessor processor, boolean packed) {
+        mMinimumPixels = minimumPixels;
+        mProcessor = processor;
+        mPacked = packed;
+    }
+
+    /**
+     * Get the previous luma image, at the analysis resolution.
+     *
+     * @return int array of previous image.
+     */
+    @Override
+    public synchronized int[] getPrevious() {
+        if (mPrevious == null) return null;
+
+        int[] previous = new int[mPrevious.length];
+        for (int i = 0; i < previous.length; i++) {
+            previous[i] = 0xff & mPrevious[i];
+        }
+        return previous;
+    }
+
+    /**
+     * Get the previous luma image, at the analysis resolution, without
+     * copying it. The view is only valid until the next call to detect, which
+     * will overwrite its contents.
+     *
+     * @return read-only ByteBuffer of previous image.
+     */
+    public synchronized ByteBuffer getPreviousView() {
+        return ((mPrevious != null) ? ByteBuffer.wrap(mPrevious).asReadOnlyBuffer() : null);
+    }
+
+    private boolean resetPrevious(int width, int height) {
+        boolean hadPrevious = mPrevious != null;
+        mSampleStep = mMinimumPixels > 0 ? ImageProcessing.getSampleFactor(width, height, mMinimumPixels) : 1;
+        mPrevious = new byte[(width / mSampleStep) * (height / mSampleStep)];
+        mPackedPreviousValid = false;
+        // Frame buffers of the old size will not be seen again (e.g., after a
+        // preview reconfigure), so stop holding on to them
+        Arrays.fill(mWrappedFrames, null);
+        Arrays.fill(mWrappedWords, null);
+        mNextWrappedFrame = 0;
+        mPreviousWidth = width;
+        mPreviousHeight = height;
+        return hadPrevious;
+    }
+
+    private static int compareAndCopyRows(byte[] yuv420sp, byte[] previous, int width, int step, int sampledWidth,
+            int firstRow, int endRow) {
+        final int rowStride = width * step;
+        int totDifferentPixels = 0;
+        for (int j = firstRow, p = firstRow * sampledWidth, rowStart = firstRow * rowStride; j < endRow;
+                j++, rowStart += rowStride) {
+            for (int i = 0, yp = rowStart; i < sampledWidth; i++, p++, yp += step) {
+                byte pix = yuv420sp[yp];
+                if (Math.abs((0xff & pix) - (0xff & previous[p])) >= mPixelThreshold) totDifferentPixels++;
+                previous[p] = pix;
+            }
+        }
+        return totDifferentPixels;
+    }
+
+    private static int compareAndCopyRows(ByteBuffer plane, int offset, int planeRowStride, byte[] previous, int step,
+            int sampledWidth, int firstRow, int endRow) {
+        final int rowStride = planeRowStride * step;
+        int totDifferentPixels = 0;
+        for (int j = firstRow, p = firstRow * sampledWidth, rowStart = offset + firstRow * rowStride; j < endRow;
+                j++, rowStart += rowStride) {
+            for (int i = 0, yp = rowStart; i < sampledWidth; i++, p++, yp += step) {
+                byte pix = plane.get(yp);
+                if (Math.abs((0xff & pix) - (0xff & previous[p])) >= mPixelThreshold) totDifferentPixels++;
+                previous[p] = pix;
+            }
+        }
+        return totDifferentPixels;
+    }
+
+    private static int compareAndCopyRows(ByteBuffer plane, int offset, int planeRowStride, byte[] previous, int step,
+            int sampledWidth, int[] columnEnds, int[] rowCounts, int firstRow, int endRow) {
+        final int rowStride = planeRowStride * step;
+        final int xBlocks = columnEnds.length;
+        int totDifferentPixels = 0;
+        for (int j = firstRow, p = firstRow * sampledWidth, rowStart = offset + firstRow * rowStride; j < endRow;
+                j++, rowStart += rowStride) {
+            for (int b = 0, r = j * xBlocks, i = 0, yp = rowStart; b < xBlocks; b++, r++) {
+                int blockDifferentPixels = 0;
+                for (int end = columnEnds[b]; i < end; i++, p++, yp += step) {
+                    byte pix = plane.get(yp);
+                    if (Math.abs((0xff & pix) - (0xff & previous[p])) >= mPixelThreshold) blockDifferentPixels++;
+                    previous[p] = pix;
+                }
+                rowCounts[r] = blockDifferentPixels;
+                totDifferentPixels += blockDifferentPixels;
+            }
+        }
+        return totDifferentPixels;
+    }
+
+    private static int compareAndCopyRows(byte[] yuv420sp, byte[] previous, int width, int step, int sampledWidth,
+            int[] columnEnds, int[] rowCounts, int firstRow, int endRow) {
+        final int rowStride = width * step;
+        final int xBlocks = columnEnds.length;
+        int totDifferentPixels = 0;
+        for (int j = firstRow, p = firstRow * sampledWidth, rowStart = firstRow * rowStride; j < endRow;
+                j++, rowStart += rowStride) {
+            for (int b = 0, r = j * xBlocks, i = 0, yp = rowStart; b < xBlocks; b++, r++) {
+                int blockDifferentPixels = 0;
+                for (int end = columnEnds[b]; i < end; i++, p++, yp += step) {
+                    byte pix = yuv420sp[yp];
+                    if (Math.abs((0xff & pix) - (0xff & previous[p])) >= mPixelThreshold) blockDifferentPixels++;
+                    previous[p] = pix;
+                }
+                rowCounts[r] = blockDifferentPixels;
+                totDifferentPixels += blockDifferentPixels;
+            }
+        }
+        return totDifferentPixels;
+    }
+
+    /**
+     * Detect motion by comparing the Y plane of a YUV420SP image with the
+     * previous one. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(byte[] yuv420sp, int width, int height) {
+        if (yuv420sp == null) throw new NullPointerException();
+
+        return detectFrame(yuv420sp, width, height, null);
+    }
+
+    /**
+     * Detect motion by comparing the Y plane of a YUV420SP image with the
+     * previous one, and count changed pixels per block. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(byte[] yuv420sp, int width, int height, MotionResult result) {
+        if (yuv420sp == null || result == null) throw new NullPointerException();
+
+        return detectFrame(yuv420sp, width, height, result);
+    }
+
+    /**
+     * Detect motion by comparing a Y plane with the previous one, reading it
+     * in place, and count changed pixels per block. Planes held in an array
+     * with no padding between rows are compared exactly as YUV420SP frames
+     * are. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(ByteBuffer luma, int rowStride, int width, int height, MotionResult result) {
+        if (luma == null || result == null) throw new NullPointerException();
+        if (rowStride < width) throw new IllegalArgumentException("Row stride is smaller than the width");
+
+        if (rowStride == width && luma.hasArray() && luma.arrayOffset() + luma.position() == 0) {
+            return detectFrame(luma.array(), width, height, result);
+        }
+        return detectFrame(null, luma, rowStride, width, height, result);
+    }
+
+    private LongBuffer getWrappedWords(byte[] yuv420sp) {
+        for (int i = 0; i < mWrappedFrameCount; i++) {
+            if (mWrappedFrames[i] == yuv420sp) return mWrappedWords[i];
+        }
+        int i = mNextWrappedFrame;
+        mNextWrappedFrame = (mNextWrappedFrame + 1) % mWrappedFrameCount;
+        mWrappedFrames[i] = yuv420sp;
+        mWrappedWords[i] = ByteBuffer.wrap(yuv420sp).order(ByteOrder.nativeOrder()).asLongBuffer();
+        return mWrappedWords[i];
+    }
+
+    private boolean detectPacked(byte[] yuv420sp, int width, int height, boolean newFrameSize, boolean sizeChanged) {
+        final int size = width * height;
+        final int words = size >>> 3;
+        if (mPackedCurrent == null || mPackedCurrent.length != words) {
+            mPackedCurrent = new long[words];
+            mPackedPrevious = new long[words];
+            mPackedPreviousValid = false;
+        }
+        if (!newFrameSize && !mPackedPreviousValid) {
+            // The previous frame was compared without packing
+            ByteBuffer.wrap(mPrevious).order(ByteOrder.nativeOrder()).asLongBuffer().get(mPackedPrevious, 0, words);
+        }
+
+        // Read the Y plane into longs with a single bulk copy; the byte order
+        // does not matter, as long as both frames use the same one
+        LongBuffer wrappedWords = getWrappedWords(yuv420sp);
+        wrappedWords.position(0);
+        wrappedWords.get(mPackedCurrent, 0, words);
+
+        int totDifferentPixels = 0;
+        if (!newFrameSize) {
+            final long[] current = mPackedCurrent;
+            final long[] previous = mPackedPrevious;
+            if (mProcessor != null) {
+                // Each "row" is a chunk of words, so bands stay large enough to be worth scheduling
+                final int chunks = (words + mPackedChunkWords - 1) / mPackedChunkWords;
+                totDifferentPixels = mProcessor.process(mPackedChunkWords * 8, chunks,
+                        new ParallelFrameProcessor.RowTask() {
+                            @Override
+                            public int processRows(int firstRow, int endRow) {
+                                return PackedLumaKernel.countDifferent(current, previous, mThresholdBias,
+                                        firstRow * mPackedChunkWords, Math.min(words, endRow * mPackedChunkWords));
+                            }
+                        });
+            } else {
+                totDifferentPixels = PackedLumaKernel.countDifferent(current, previous, mThresholdBias, 0, words);
+            }
+            // Any pixels that do not fill a whole word are compared one at a time
+            totDifferentPixels += PackedLumaKernel.countDifferent(yuv420sp, mPrevious, words << 3, size,
+                    mPixelThreshold);
+        }
+
+        // Replace the previous frame with this one
+        System.arraycopy(yuv420sp, 0, mPrevious, 0, size);
+        long[] previous = mPackedPrevious;
+        mPackedPrevious = mPackedCurrent;
+        mPackedCurrent = previous;
+        mPackedPreviousValid = true;
+
+        if (newFrameSize) return sizeChanged;
+        return totDifferentPixels > size * mThreshold;
+    }
+
+    private boolean detectFrame(byte[] yuv420sp, int width, int height, MotionResult result) {
+        return detectFrame(yuv420sp, null, width, width, height, result);
+    }
+
+    // Exactly one of yuv420sp and plane is given
+    private boolean detectFrame(final byte[] yuv420sp, final ByteBuffer plane, final int rowStride, final int width,
+            int height, MotionResult result) {
+        // Create the "previous" picture, the one that will be used to check
+        // the next frame against. A change of size counts as motion.
+        boolean newFrameSize = mPrevious == null || mPreviousWidth != width || mPreviousHeight != height;
+        boolean sizeChanged = newFrameSize && resetPrevious(width, height);
+
+        final byte[] previous = mPrevious;
+        final int step = mSampleStep;
+        final int sampledWidth = width / step;
+        final int sampledHeight = height / step;
+        if (mPacked && step == 1 && result == null && yuv420sp != null) {
+            return detectPacked(yuv420sp, width, height, newFrameSize, sizeChanged);
+        }
+        mPackedPreviousValid = false;
+
+        final int[] columnEnds;
+        final int[] rowCounts;
+        if (result != null) {
+            result.begin(sampledWidth, sampledHeight, step);
+            columnEnds = result.getColumnEnds();
+            rowCounts = result.getRowCounts();
+        } else {
+            columnEnds = null;
+            rowCounts = null;
+        }
+
+        int totDifferentPixels;
+        if (plane != null) {
+            final int offset = plane.position();
+            if (mProcessor != null) {
+                totDifferentPixels = mProcessor.process(sampledWidth, sampledHeight,
+                        new ParallelFrameProcessor.RowTask() {
+                            @Override
+                            public int processRows(int firstRow, int endRow) {
+                                if (columnEnds != null) {
+                                    return compareAndCopyRows(plane, offset, rowStride, previous, step, sampledWidth,
+                                            columnEnds, rowCounts, firstRow, endRow);
+                                }
+                                return compareAndCopyRows(plane, offset, rowStride, previous, step, sampledWidth,
+                                        firstRow, endRow);
+                            }
+                        });
+            } else if (columnEnds != null) {
+                totDifferentPixels = compareAndCopyRows(plane, offset, rowStride, previous, step, sampledWidth,
+                        columnEnds, rowCounts, 0, sampledHeight);
+            } else {
+                totDifferentPixels = compareAndCopyRows(plane, offset, rowStride, previous, step, sampledWidth, 0,
+                        sampledHeight);
+            }
+        } else if (mProcessor != null) {
+            totDifferentPixels = mProcessor.process(sampledWidth, sampledHeight, new ParallelFrameProcessor.RowTask() {
+                @Override
+                public int processRows(int firstRow, int endRow) {
+                    if (columnEnds != null) {
+                        return compareAndCopyRows(yuv420sp, previous, width, step, sampledWidth, columnEnds, rowCounts,
+                                firstRow, endRow);
+                    }
+                    return compareAndCopyRows(yuv420sp, previous, width, step, sampledWidth, firstRow, endRow);
+                }
+            });
+        } else if (columnEnds != null) {
+            totDifferentPixels = compareAndCopyRows(yuv420sp, previous, width, step, sampledWidth, columnEnds,
+                    rowCounts, 0, sampledHeight);
+        } else {
+            totDifferentPixels = compareAndCopyRows(yuv420sp, previous, width, step, sampledWidth, 0, sampledHeight);
+        }
+
+        if (newFrameSize) {
+            if (result != null) result.clear(sizeChanged);
+            return sizeChanged;
+        }
+        boolean motion = totDifferentPixels > sampledWidth * sampledHeight * mThreshold;
+        if (result != null) result.finish(motion, totDifferentPixels);
+        return motion;
+    }
+
+    /**
+     * Detect motion by comparing an image of luma values (e.g., from
+     * {@link ImageProcessing#decodeYUV420SPtoLuma}) with the previous one.
+     * Frames should be supplied consistently through either this method or
+     * {@link #detect(byte[], int, int)}, as the two do not share the same luma
+     * offset. {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean detect(int[] luma, int width, int height) {
+        if (luma == null) throw new NullPointerException();
+
+        boolean newFrameSize = mPrevious == null || mPreviousWidth != width || mPreviousHeight != height;
+        boolean sizeChanged = newFrameSize && resetPrevious(width, height);
+
+        final byte[] previous = mPrevious;
+        final int step = mSampleStep;
+        final int sampledWidth = width / step;
+        final int sampledHeight = height / step;
+        final int rowStride = width * step;
+        mPackedPreviousValid = false;
+
+        int totDifferentPixels = 0;
+        for (int j = 0, p = 0, rowStart = 0; j < sampledHeight; j++, rowStart += rowStride) {
+            for (int i = 0, yp = rowStart; i < sampledWidth; i++, p++, yp += step) {
+                int pix = 0xff & luma[yp];
+                if (Math.abs(pix - (0xff & previous[p])) >= mPixelThreshold) totDifferentPixels++;
+                previous[p] = (byte) pix;
+            }
+        }
+
+        if (newFrameSize) return sizeChanged;
+        return totDifferentPixels > sampledWidth * sampledHeight * mThreshold;
+    }
+}
@@ -23,6 +23,54 @@ public abstract class ImageProcessing {
     public static final int S = 1;
     public static final int L = 2;
 
+    public static final int MAX_SAMPLE_FACTOR = 8;
+
+    // Lookup tables for YUV to RGB conversion. Each holds one term of the
+    // integer conversion (coefficients 1192, 1634, 833, 400 and 2066, scaled
+    // by 2^10) for every possible byte value, so decoding a pixel needs only
+    // table reads and additions.
+    private static final int[] sY1192 = new int[256];
+    private static final int[] sV1634 = new int[256];
+    private static final int[] sV833 = new int[256];
+    private static final int[] sU400 = new int[256];
+    private static final int[] sU2066 = new int[256];
+
+    // Maps (term sum >> 10) to a clamped 0-255 channel value without any
+    // branches. Sums range from 2066 * -128 to 1192 * 239 + 2066 * 127, so
+    // after shifting they always fall between -259 and 534.
+    private static final int CLAMP_OFFSET = 384;
+    private static final int[] sClamp = new int[1024];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            sY1192[i] = 1192 * Math.max(i - 16, 0);
+            sV1634[i] = 1634 * (i - 128);
+            sV833[i] = -833 * (i - 128);
+            sU400[i] = -400 * (i - 128);
+            sU2066[i] = 2066 * (i - 128);
+        }
+        for (int i = 0; i < sClamp.length; i++) {
+            sClamp[i] = Math.min(Math.max(i - CLAMP_OFFSET, 0), 255);
+        }
+    }
+
+    // Reciprocal tables for integer HSV conversion, as used by OpenCV's
+    // 8-bit RGB to HSV conversion (values are scaled by 2^HSV_SHIFT)
+    private static final int HSV_SHIFT = 12;
+    private static final int[] sSaturationDiv = new int[256];
+    private static final int[] sHueDiv = new int[256];
+    private static final int[] sLightnessDiv = new int[511];
+
+    static {
+        for (int i = 1; i < 256; i++) {
+            sSaturationDiv[i] = (int) Math.rint((255 << HSV_SHIFT) / (double) i);
+            sHueDiv[i] = (int) Math.rint((180 << HSV_SHIFT) / (6.0 * i));
+        }
+        for (int i = 1; i < sLightnessDiv.length; i++) {
+            sLightnessDiv[i] = (int) Math.rint((255 << HSV_SHIFT) / (double) i);
+        }
+    }
+
     private ImageProcessing() {
     }
 
@@ -34,11 +82,25 @@ public abstract class ImageProcessing {
      * @return float array of a,r,g,b values.
      */
     public static float[] getARGB(int pixel) {
-        int a = (pixel >> 24) & 0xff;
-        int r = (pixel >> 16) & 0xff;
-        int g = (pixel >> 8) & 0xff;
-        int b = (pixel) & 0xff;
-        return (new float[] { a, r, g, b });
+        return getARGB(pixel, new float[4]);
+    }
+
+    /**
+     * Get RGB values from pixel, writing into an existing array.
+     * 
+     * @param pixel
+     *            Integer representation of a pixel.
+     * @param argb
+     *            float array of at least 4 elements to write a,r,g,b values
+     *            into.
+     * @return The argb array that was passed in.
+     */
+    public static float[] getARGB(int pixel, float[] argb) {
+        argb[A] = (pixel >> 24) & 0xff;
+        argb[R] = (pixel >> 16) & 0xff;
+        argb[G] = (pixel >> 8) & 0xff;
+        argb[B] = (pixel) & 0xff;
+        return argb;
     }
 
     /**
@@ -54,9 +116,27 @@ public abstract class ImageProcessing {
      * @return Integer array representing an HSL pixel.
      */
     public static int[] convertToHSL(int r, int g, int b) {
-        float red = r / 255;
-        float green = g / 255;
-        float blue = b / 255;
+        return convertToHSL(r, g, b, new int[3]);
+    }
+
+    /**
+     * Get HSL (Hue, Saturation, Luma) from RGB, writing into an existing
+     * array. Note1: H is 0-360 (degrees) Note2: S and L are 0-100 (percent)
+     * 
+     * @param r
+     *            Red value.
+     * @param g
+     *            Green value.
+     * @param b
+     *            Blue value.
+     * @param hsl
+     *            int array of at least 3 elements to write h,s,l values into.
+     * @return The hsl array that was passed in.
+     */
+    public static int[] convertToHSL(int r, int g, int b, int[] hsl) {
+        float red = r / 255f;
+        float green = g / 255f;
+        float blue = b / 255f;
 
         float minComponent = Math.min(red, Math.min(green, blue));
         float maxComponent = Math.max(red, Math.max(green, blue));
@@ -68,10 +148,10 @@ public abstract class ImageProcessing {
         if (range == 0) { // Monochrome image
             h = s = 0;
         } else {
-            s = (l > 0.5) ? range / (2 - range) : range / (maxComponent + minComponent);
+            s = (l > 0.5) ? range / (2 - maxComponent - minComponent) : range / (maxComponent + minComponent);
 
             if (red == maxComponent) {
-                h = (blue - green) / range;
+                h = (green - blue) / range;
             } else if (green == maxComponent) {
                 h = 2 + (blue - red) / range;
             } else if (blue == maxComponent) {
@@ -88,7 +168,180 @@ public abstract class ImageProcessing {
         l *= 100;
 
         // Since they were converted from float to int
-        return (new int[] { (int) h, (int) s, (int) l });
+        hsl[H] = (int) h;
+        hsl[S] = (int) s;
+        hsl[L] = (int) l;
+        return hsl;
+    }
+
+    private static int getHue(int r, int g, int b, int max, int diff) {
+        // OpenCV's integer formulation: offsets select the sector, then scale to 0-180
+        int h;
+        if (max == r) {
+            h = g - b;
+        } else if (max == g) {
+            h = b - r + 2 * diff;
+        } else {
+            h = r - g + 4 * diff;
+        }
+        h = (h * sHueDiv[diff] + (1 << (HSV_SHIFT - 1))) >> HSV_SHIFT;
+        if (h < 0) h += 180;
+        return h;
+    }
+
+    /**
+     * Convert an ARGB image into separate H, S and V planes, using the same
+     * integer arithmetic and ranges as OpenCV's 8-bit RGB to HSV conversion:
+     * H is 0-180, S and V are 0-255. Values are unsigned, so should be read
+     * back with (0xff &amp; value). Alpha is ignored.
+     * 
+     * @param argb
+     *            Integer array representing an ARGB image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param hue
+     *            Destination array for hue, of at least width * height
+     *            elements.
+     * @param saturation
+     *            Destination array for saturation, of at least width * height
+     *            elements.
+     * @param value
+     *            Destination array for value, of at least width * height
+     *            elements.
+     * @throws NullPointerException
+     *             if any array is NULL.
+     * @throws IllegalArgumentException
+     *             if any destination array is too small.
+     */
+    public static void convertARGBToHSV(int[] argb, int width, int height, byte[] hue, byte[] saturation,
+            byte[] value) {
+        if (argb == null || hue == null || saturation == null || value == null) throw new NullPointerException();
+
+        final int frameSize = width * height;
+        if (hue.length < frameSize || saturation.length < frameSize || value.length < frameSize) {
+            throw new IllegalArgumentException("Destination array is too small");
+        }
+
+        for (int p = 0; p < frameSize; p++) {
+            int pixel = argb[p];
+            toHSV((pixel >> 16) & 0xff, (pixel >> 8) & 0xff, pixel & 0xff, hue, saturation, value, p);
+        }
+    }
+
+    /**
+     * Decode a YUV420SP image straight into separate H, S and V planes, without
+     * an intermediate RGB image. Ranges are the same as
+     * {@link #convertARGBToHSV}.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param hue
+     *            Destination array for hue, of at least width * height
+     *            elements.
+     * @param saturation
+     *            Destination array for saturation, of at least width * height
+     *            elements.
+     * @param value
+     *            Destination array for value, of at least width * height
+     *            elements.
+     * @throws NullPointerException
+     *             if any array is NULL.
+     * @throws IllegalArgumentException
+     *             if any destination array is too small.
+     */
+    public static void decodeYUV420SPtoHSV(byte[] yuv420sp, int width, int height, byte[] hue, byte[] saturation,
+            byte[] value) {
+        if (yuv420sp == null || hue == null || saturation == null || value == null) throw new NullPointerException();
+
+        final int frameSize = width * height;
+        if (hue.length < frameSize || saturation.length < frameSize || value.length < frameSize) {
+            throw new IllegalArgumentException("Destination array is too small");
+        }
+
+        for (int j = 0, yp = 0; j < height; j++) {
+            int uvp = frameSize + (j >> 1) * width, vr = 0, uvg = 0, ub = 0;
+            for (int i = 0; i < width; i++, yp++) {
+                if ((i & 1) == 0) {
+                    int v = 0xff & yuv420sp[uvp++];
+                    int u = 0xff & yuv420sp[uvp++];
+                    vr = sV1634[v];
+                    uvg = sV833[v] + sU400[u];
+                    ub = sU2066[u];
+                }
+                int y1192 = sY1192[0xff & yuv420sp[yp]];
+                toHSV(sClamp[((y1192 + vr) >> 10) + CLAMP_OFFSET], sClamp[((y1192 + uvg) >> 10) + CLAMP_OFFSET],
+                        sClamp[((y1192 + ub) >> 10) + CLAMP_OFFSET], hue, saturation, value, yp);
+            }
+        }
+    }
+
+    private static void toHSV(int r, int g, int b, byte[] hue, byte[] saturation, byte[] value, int p) {
+        int max = Math.max(r, Math.max(g, b));
+        int diff = max - Math.min(r, Math.min(g, b));
+        hue[p] = (byte) getHue(r, g, b, max, diff);
+        saturation[p] = (byte) ((diff * sSaturationDiv[max] + (1 << (HSV_SHIFT - 1))) >> HSV_SHIFT);
+        value[p] = (byte) max;
+    }
+
+    /**
+     * Convert an ARGB image into separate H, L and S planes, using OpenCV's
+     * 8-bit HLS ranges: H is 0-180, L and S are 0-255. Values are unsigned, so
+     * should be read back with (0xff &amp; value). Alpha is ignored.
+     * 
+     * H and S use the same integer arithmetic as {@link #convertARGBToHSV},
+     * whereas OpenCV calculates HLS in floating point, so they may differ
+     * from OpenCV's values by one (H wrapping round at 180). L is exact.
+     * 
+     * @param argb
+     *            Integer array representing an ARGB image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param hue
+     *            Destination array for hue, of at least width * height
+     *            elements.
+     * @param saturation
+     *            Destination array for saturation, of at least width * height
+     *            elements.
+     * @param lightness
+     *            Destination array for lightness, of at least width * height
+     *            elements.
+     * @throws NullPointerException
+     *             if any array is NULL.
+     * @throws IllegalArgumentException
+     *             if any destination array is too small.
+     */
+    public static void convertARGBToHSL(int[] argb, int width, int height, byte[] hue, byte[] saturation,
+            byte[] lightness) {
+        if (argb == null || hue == null || saturation == null || lightness == null) throw new NullPointerException();
+
+        final int frameSize = width * height;
+        if (hue.length < frameSize || saturation.length < frameSize || lightness.length < frameSize) {
+            throw new IllegalArgumentException("Destination array is too small");
+        }
+
+        for (int p = 0; p < frameSize; p++) {
+            int pixel = argb[p];
+            int r = (pixel >> 16) & 0xff;
+            int g = (pixel >> 8) & 0xff;
+            int b = pixel & 0xff;
+            int max = Math.max(r, Math.max(g, b));
+            int min = Math.min(r, Math.min(g, b));
+            int diff = max - min;
+            int sum = max + min;
+            hue[p] = (byte) getHue(r, g, b, max, diff);
+            // lightness below half: S = diff / sum; otherwise S = diff / (2 - sum), all scaled to 0-255
+            int divisor = sum < 255 ? sum : 510 - sum;
+            saturation[p] = (byte) ((diff * sLightnessDiv[divisor] + (1 << (HSV_SHIFT - 1))) >> HSV_SHIFT);
+            lightness[p] = (byte) ((sum >> 1) + (sum & (sum >> 1) & 1)); // halves round to even, as OpenCV does
+        }
     }
 
     /**
@@ -107,17 +360,82 @@ public abstract class ImageProcessing {
     public static int[] decodeYUV420SPtoLuma(byte[] yuv420sp, int width, int height) {
         if (yuv420sp == null) throw new NullPointerException();
 
+        return decodeYUV420SPtoLuma(yuv420sp, width, height, new int[width * height]);
+    }
+
+    /**
+     * Decode a YUV420SP image to Luma, writing into an existing array so that
+     * repeated calls (e.g., once per preview frame) do not allocate.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param luma
+     *            Destination array of at least width * height elements.
+     * @return The luma array that was passed in.
+     * @throws NullPointerException
+     *             if yuv420sp or luma array is NULL.
+     * @throws IllegalArgumentException
+     *             if luma array is smaller than width * height.
+     */
+    public static int[] decodeYUV420SPtoLuma(byte[] yuv420sp, int width, int height, int[] luma) {
+        if (yuv420sp == null || luma == null) throw new NullPointerException();
+
         final int frameSize = width * height;
-        int[] hsl = new int[frameSize];
+        if (luma.length < frameSize) throw new IllegalArgumentException("Destination array is too small");
 
-        for (int j = 0, yp = 0; j < height; j++) {
+        decodeLumaRows(yuv420sp, width, luma, 0, height);
+        return luma;
+    }
+
+    /**
+     * Decode a YUV420SP image to Luma, splitting the work into bands of rows
+     * that are decoded in parallel when the image is large enough.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param luma
+     *            Destination array of at least width * height elements.
+     * @param processor
+     *            ParallelFrameProcessor to run the decode with.
+     * @return The luma array that was passed in.
+     * @throws NullPointerException
+     *             if yuv420sp array, luma array or processor is NULL.
+     * @throws IllegalArgumentException
+     *             if luma array is smaller than width * height.
+     */
+    public static int[] decodeYUV420SPtoLuma(final byte[] yuv420sp, final int width, int height, final int[] luma,
+            ParallelFrameProcessor processor) {
+        if (yuv420sp == null || luma == null || processor == null) throw new NullPointerException();
+
+        final int frameSize = width * height;
+        if (luma.length < frameSize) throw new IllegalArgumentException("Destination array is too small");
+
+        processor.process(width, height, new ParallelFrameProcessor.RowTask() {
+            @Override
+            public int processRows(int firstRow, int endRow) {
+                decodeLumaRows(yuv420sp, width, luma, firstRow, endRow);
+                return 0;
+            }
+        });
+        return luma;
+    }
+
+    private static void decodeLumaRows(byte[] yuv420sp, int width, int[] luma, int firstRow, int endRow) {
+        for (int j = firstRow, yp = firstRow * width; j < endRow; j++) {
             for (int i = 0; i < width; i++, yp++) {
                 int y = (0xff & (yuv420sp[yp])) - 16;
                 if (y < 0) y = 0;
-                hsl[yp] = y;
+                luma[yp] = y;
             }
         }
-        return hsl;
     }
 
     /**
@@ -136,31 +454,267 @@ public abstract class ImageProcessing {
     public static int[] decodeYUV420SPtoRGB(byte[] yuv420sp, int width, int height) {
         if (yuv420sp == null) throw new NullPointerException();
 
+        return decodeYUV420SPtoRGB(yuv420sp, width, height, new int[width * height]);
+    }
+
+    /**
+     * Decode a YUV420SP image to RGB, writing into an existing array so that
+     * repeated calls (e.g., once per preview frame) do not allocate.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param rgb
+     *            Destination array of at least width * height elements.
+     * @return The rgb array that was passed in.
+     * @throws NullPointerException
+     *             if yuv420sp or rgb array is NULL.
+     * @throws IllegalArgumentException
+     *             if rgb array is smaller than width * height.
+     */
+    public static int[] decodeYUV420SPtoRGB(byte[] yuv420sp, int width, int height, int[] rgb) {
+        if (yuv420sp == null || rgb == null) throw new NullPointerException();
+
         final int frameSize = width * height;
-        int[] rgb = new int[frameSize];
+        if (rgb.length < frameSize) throw new IllegalArgumentException("Destination array is too small");
 
-        for (int j = 0, yp = 0; j < height; j++) {
-            int uvp = frameSize + (j >> 1) * width, u = 0, v = 0;
-            for (int i = 0; i < width; i++, yp++) {
-                int y = (0xff & (yuv420sp[yp])) - 16;
+        decodeRGBRows(yuv420sp, width, height, rgb, 0, height);
+        return rgb;
+    }
+
+    /**
+     * Decode a YUV420SP image to RGB, splitting the work into bands of rows
+     * that are decoded in parallel when the image is large enough.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param rgb
+     *            Destination array of at least width * height elements.
+     * @param processor
+     *            ParallelFrameProcessor to run the decode with.
+     * @return The rgb array that was passed in.
+     * @throws NullPointerException
+     *             if yuv420sp array, rgb array or processor is NULL.
+     * @throws IllegalArgumentException
+     *             if rgb array is smaller than width * height.
+     */
+    public static int[] decodeYUV420SPtoRGB(final byte[] yuv420sp, final int width, final int height, final int[] rgb,
+            ParallelFrameProcessor processor) {
+        if (yuv420sp == null || rgb == null || processor == null) throw new NullPointerException();
+
+        final int frameSize = width * height;
+        if (rgb.length < frameSize) throw new IllegalArgumentException("Destination array is too small");
+
+        processor.process(width, height, new ParallelFrameProcessor.RowTask() {
+            @Override
+            public int processRows(int firstRow, int endRow) {
+                decodeRGBRows(yuv420sp, width, height, rgb, firstRow, endRow);
+                return 0;
+            }
+        });
+        return rgb;
+    }
+
+    private static void decodeRGBRows(byte[] yuv420sp, int width, int height, int[] rgb, int firstRow, int endRow) {
+        final int frameSize = width * height;
+        for (int j = firstRow, yp = firstRow * width; j < endRow; j++) {
+            int uvp = frameSize + (j >> 1) * width;
+            int i = 0;
+            // each VU pair is shared by two horizontally adjacent pixels
+            for (; i + 1 < width; i += 2, yp += 2) {
+                int v = 0xff & yuv420sp[uvp++];
+                int u = 0xff & yuv420sp[uvp++];
+                int vr = sV1634[v];
+                int uvg = sV833[v] + sU400[u];
+                int ub = sU2066[u];
+                rgb[yp] = toRGB(sY1192[0xff & yuv420sp[yp]], vr, uvg, ub);
+                rgb[yp + 1] = toRGB(sY1192[0xff & yuv420sp[yp + 1]], vr, uvg, ub);
+            }
+            if (i < width) {
+                int v = 0xff & yuv420sp[uvp++];
+                int u = 0xff & yuv420sp[uvp];
+                rgb[yp] = toRGB(sY1192[0xff & yuv420sp[yp]], sV1634[v], sV833[v] + sU400[u], sU2066[u]);
+                yp++;
+            }
+        }
+    }
+
+    private static int toRGB(int y1192, int vr, int uvg, int ub) {
+        return 0xff000000 | (sClamp[((y1192 + vr) >> 10) + CLAMP_OFFSET] << 16) |
+                (sClamp[((y1192 + uvg) >> 10) + CLAMP_OFFSET] << 8) | sClamp[((y1192 + ub) >> 10) + CLAMP_OFFSET];
+    }
+
+    /**
+     * Get the largest supported sample factor (1, 2, 4 or 8) that keeps a
+     * downsampled image at or above the given number of pixels.
+     * 
+     * @param width
+     *            Width of the full size image.
+     * @param height
+     *            Height of the full size image.
+     * @param minimumPixels
+     *            Smallest acceptable number of pixels in the sampled image.
+     * @return Sample factor to pass to the downsampling decode methods.
+     */
+    public static int getSampleFactor(int width, int height, int minimumPixels) {
+        int factor = 1;
+        while (factor < MAX_SAMPLE_FACTOR && (width / (factor * 2)) * (height / (factor * 2)) >= minimumPixels) {
+            factor *= 2;
+        }
+        return factor;
+    }
+
+    /**
+     * Get the size of one dimension of an image after downsampling.
+     * 
+     * @param size
+     *            Width or height of the full size image.
+     * @param sampleFactor
+     *            Sample factor (1, 2, 4 or 8).
+     * @return Width or height of the sampled image. Any remainder pixels are
+     *         discarded.
+     */
+    public static int getSampledSize(int size, int sampleFactor) {
+        return size / sampleFactor;
+    }
+
+    private static int getSampleShift(int sampleFactor) {
+        switch (sampleFactor) {
+            case 1:
+                return 0;
+            case 2:
+                return 1;
+            case 4:
+                return 2;
+            case 8:
+                return 3;
+            default:
+                throw new IllegalArgumentException("Sample factor must be 1, 2, 4 or 8");
+        }
+    }
+
+    /**
+     * Decode a YUV420SP image to Luma at a reduced resolution. Each output
+     * pixel is the average (box filter) of a sampleFactor x sampleFactor block
+     * of the Y plane, so the cost scales with the number of source pixels read
+     * once, and all later analysis scales with the sampled size.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the full size image.
+     * @param height
+     *            Height of the full size image.
+     * @param sampleFactor
+     *            Sample factor (1, 2, 4 or 8).
+     * @param luma
+     *            Destination array of at least getSampledSize(width) *
+     *            getSampledSize(height) elements.
+     * @return The luma array that was passed in.
+     * @throws NullPointerException
+     *             if yuv420sp or luma array is NULL.
+     * @throws IllegalArgumentException
+     *             if the sample factor is unsupported or luma array is too
+     *             small.
+     */
+    public static int[] decodeYUV420SPtoLuma(byte[] yuv420sp, int width, int height, int sampleFactor, int[] luma) {
+        if (yuv420sp == null || luma == null) throw new NullPointerException();
+
+        final int shift = getSampleShift(sampleFactor);
+        if (shift == 0) return decodeYUV420SPtoLuma(yuv420sp, width, height, luma);
+
+        final int sampledWidth = getSampledSize(width, sampleFactor);
+        final int sampledHeight = getSampledSize(height, sampleFactor);
+        if (luma.length < sampledWidth * sampledHeight) {
+            throw new IllegalArgumentException("Destination array is too small");
+        }
+
+        final int areaShift = shift * 2;
+        for (int j = 0, out = 0; j < sampledHeight; j++) {
+            final int rowStart = (j << shift) * width;
+            for (int i = 0; i < sampledWidth; i++, out++) {
+                int sum = 0;
+                for (int dy = 0, yp = rowStart + (i << shift); dy < sampleFactor; dy++, yp += width) {
+                    for (int dx = 0; dx < sampleFactor; dx++) {
+                        sum += 0xff & yuv420sp[yp + dx];
+                    }
+                }
+                int y = (sum >> areaShift) - 16;
                 if (y < 0) y = 0;
-                if ((i & 1) == 0) {
-                    v = (0xff & yuv420sp[uvp++]) - 128;
-                    u = (0xff & yuv420sp[uvp++]) - 128;
+                luma[out] = y;
+            }
+        }
+        return luma;
+    }
+
+    /**
+     * Decode a YUV420SP image to RGB at a reduced resolution. The Y plane is
+     * averaged over sampleFactor x sampleFactor blocks, and the interleaved VU
+     * plane over the matching (sampleFactor / 2) x (sampleFactor / 2) blocks.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the full size image.
+     * @param height
+     *            Height of the full size image.
+     * @param sampleFactor
+     *            Sample factor (1, 2, 4 or 8).
+     * @param rgb
+     *            Destination array of at least getSampledSize(width) *
+     *            getSampledSize(height) elements.
+     * @return The rgb array that was passed in.
+     * @throws NullPointerException
+     *             if yuv420sp or rgb array is NULL.
+     * @throws IllegalArgumentException
+     *             if the sample factor is unsupported or rgb array is too
+     *             small.
+     */
+    public static int[] decodeYUV420SPtoRGB(byte[] yuv420sp, int width, int height, int sampleFactor, int[] rgb) {
+        if (yuv420sp == null || rgb == null) throw new NullPointerException();
+
+        final int shift = getSampleShift(sampleFactor);
+        if (shift == 0) return decodeYUV420SPtoRGB(yuv420sp, width, height, rgb);
+
+        final int sampledWidth = getSampledSize(width, sampleFactor);
+        final int sampledHeight = getSampledSize(height, sampleFactor);
+        if (rgb.length < sampledWidth * sampledHeight) {
+            throw new IllegalArgumentException("Destination array is too small");
+        }
+
+        final int frameSize = width * height;
+        final int areaShift = shift * 2;
+        final int uvFactor = sampleFactor >> 1; // chroma is already subsampled 2x in each direction
+        final int uvAreaShift = areaShift - 2;
+        for (int j = 0, out = 0; j < sampledHeight; j++) {
+            final int rowStart = (j << shift) * width;
+            final int uvRowStart = frameSize + ((j << shift) >> 1) * width;
+            for (int i = 0; i < sampledWidth; i++, out++) {
+                int ySum = 0;
+                for (int dy = 0, yp = rowStart + (i << shift); dy < sampleFactor; dy++, yp += width) {
+                    for (int dx = 0; dx < sampleFactor; dx++) {
+                        ySum += 0xff & yuv420sp[yp + dx];
+                    }
+                }
+                int vSum = 0;
+                int uSum = 0;
+                for (int dy = 0, uvp = uvRowStart + (i << shift); dy < uvFactor; dy++, uvp += width) {
+                    for (int dx = 0; dx < uvFactor * 2; dx += 2) {
+                        vSum += 0xff & yuv420sp[uvp + dx];
+                        uSum += 0xff & yuv420sp[uvp + dx + 1];
+                    }
                 }
-                int y1192 = 1192 * y;
-                int r = (y1192 + 1634 * v);
-                int g = (y1192 - 833 * v - 400 * u);
-                int b = (y1192 + 2066 * u);
-
-                if (r < 0) r = 0;
-                else if (r > 262143) r = 262143;
-                if (g < 0) g = 0;
-                else if (g > 262143) g = 262143;
-                if (b < 0) b = 0;
-                else if (b > 262143) b = 262143;
-
-                rgb[yp] = 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+
+                int v = vSum >> uvAreaShift;
+                int u = uSum >> uvAreaShift;
+                rgb[out] = toRGB(sY1192[ySum >> areaShift], sV1634[v], sV833[v] + sU400[u], sU2066[u]);
             }
         }
         return rgb;
@@ -234,10 +788,7 @@ public abstract class ImageProcessing {
         matrix.postRotate(degrees);
 
         // Getting the rotated Bitmap
-        Bitmap rotatedBmp = Bitmap.createBitmap(bmp, 0, 0, width, height, matrix, true);
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        rotatedBmp.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-        return rotatedBmp;
+        return Bitmap.createBitmap(bmp, 0, 0, width, height, matrix, true);
     }
 
     /**
@@ -263,4 +814,160 @@ public abstract class ImageProcessing {
         rotatedBmp.compress(Bitmap.CompressFormat.JPEG, 100, stream);
         return stream.toByteArray();
     }
+
+    /**
+     * Get the number of bytes needed to hold a YUV420SP image.
+     * 
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @return int size of the image's Y plane plus its interleaved VU plane.
+     */
+    public static int getYUV420SPSize(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Rotate a YUV420SP image clockwise by a multiple of 90 degrees, working
+     * directly on its Y and VU planes. No Bitmap or image codec is involved,
+     * and the result is lossless.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the image (must be even).
+     * @param height
+     *            Height of the image (must be even).
+     * @param degrees
+     *            Degrees to rotate (0, 90, 180 or 270, or an equivalent
+     *            negative or larger angle).
+     * @param rotated
+     *            Destination array of at least getYUV420SPSize(width, height)
+     *            elements; must not be the same array as yuv420sp. Rotating by
+     *            90 or 270 degrees swaps the image's width and height.
+     * @return The rotated array that was passed in.
+     * @throws NullPointerException
+     *             if yuv420sp or rotated array is NULL.
+     * @throws IllegalArgumentException
+     *             if degrees is not a multiple of 90, the image size is odd,
+     *             or rotated is too small or the same array as yuv420sp.
+     */
+    public static byte[] rotateYUV420SP(byte[] yuv420sp, int width, int height, int degrees, byte[] rotated) {
+        if (yuv420sp == null || rotated == null) throw new NullPointerException();
+        if (yuv420sp == rotated) throw new IllegalArgumentException("Cannot rotate an image into itself");
+        if ((width & 1) != 0 || (height & 1) != 0) throw new IllegalArgumentException("Image size must be even");
+        if (degrees % 90 != 0) throw new IllegalArgumentException("Degrees must be a multiple of 90");
+
+        final int frameSize = width * height;
+        if (rotated.length < frameSize + frameSize / 2) {
+            throw new IllegalArgumentException("Destination array is too small");
+        }
+
+        degrees = ((degrees % 360) + 360) % 360;
+        rotatePlane(yuv420sp, 0, width, height, 1, degrees, rotated, 0);
+        rotatePlane(yuv420sp, frameSize, width / 2, height / 2, 2, degrees, rotated, frameSize);
+        return rotated;
+    }
+
+    // sampleSize is 1 for the Y plane, or 2 for the VU plane, where each
+    // sample is a V and U pair that must stay together (and in order)
+    private static void rotatePlane(byte[] src, int srcOffset, int width, int height, int sampleSize, int degrees,
+            byte[] dst, int dstOffset) {
+        final int samples = width * height;
+        switch (degrees) {
+            case 0:
+                System.arraycopy(src, srcOffset, dst, dstOffset, samples * sampleSize);
+                break;
+
+            case 90:
+                // destination is height wide; each destination row is a source column, read bottom to top
+                for (int y = 0, o = dstOffset; y < width; y++) {
+                    for (int x = 0, i = srcOffset + ((height - 1) * width + y) * sampleSize; x < height; x++,
+                            o += sampleSize, i -= width * sampleSize) {
+                        dst[o] = src[i];
+                        if (sampleSize == 2) dst[o + 1] = src[i + 1];
+                    }
+                }
+                break;
+
+            case 180:
+                for (int p = 0, o = dstOffset, i = srcOffset + (samples - 1) * sampleSize; p < samples; p++,
+                        o += sampleSize, i -= sampleSize) {
+                    dst[o] = src[i];
+                    if (sampleSize == 2) dst[o + 1] = src[i + 1];
+                }
+                break;
+
+            case 270:
+                // destination is height wide; each destination row is a source column, read top to bottom
+                for (int y = 0, o = dstOffset; y < width; y++) {
+                    for (int x = 0, i = srcOffset + (width - 1 - y) * sampleSize; x < height; x++, o += sampleSize,
+                            i += width * sampleSize) {
+                        dst[o] = src[i];
+                        if (sampleSize == 2) dst[o + 1] = src[i + 1];
+                    }
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Crop a rectangle out of a YUV420SP image, copying rows of its Y and VU
+     * planes directly. Because each VU pair covers a 2x2 block of pixels, the
+     * rectangle's position and size must all be even.
+     * 
+     * @param yuv420sp
+     *            Byte array representing a YUV420SP image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param left
+     *            Left edge of the crop rectangle (must be even).
+     * @param top
+     *            Top edge of the crop rectangle (must be even).
+     * @param cropWidth
+     *            Width of the crop rectangle (must be even).
+     * @param cropHeight
+     *            Height of the crop rectangle (must be even).
+     * @param cropped
+     *            Destination array of at least getYUV420SPSize(cropWidth,
+     *            cropHeight) elements.
+     * @return The cropped array that was passed in.
+     * @throws NullPointerException
+     *             if yuv420sp or cropped array is NULL.
+     * @throws IllegalArgumentException
+     *             if the rectangle is odd, outside the image, or cropped is
+     *             too small.
+     */
+    public static byte[] cropYUV420SP(byte[] yuv420sp, int width, int height, int left, int top, int cropWidth,
+            int cropHeight, byte[] cropped) {
+        if (yuv420sp == null || cropped == null) throw new NullPointerException();
+        if (((left | top | cropWidth | cropHeight) & 1) != 0) {
+            throw new IllegalArgumentException("Crop rectangle must be aligned to even pixels");
+        }
+        if (left < 0 || top < 0 || cropWidth <= 0 || cropHeight <= 0 || left + cropWidth > width ||
+                top + cropHeight > height) {
+            throw new IllegalArgumentException("Crop rectangle must be inside the image");
+        }
+
+        final int croppedFrameSize = cropWidth * cropHeight;
+        if (cropped.length < croppedFrameSize + croppedFrameSize / 2) {
+            throw new IllegalArgumentException("Destination array is too small");
+        }
+
+        for (int y = 0, i = top * width + left, o = 0; y < cropHeight; y++, i += width, o += cropWidth) {
+            System.arraycopy(yuv420sp, i, cropped, o, cropWidth);
+        }
+        // the VU plane has half as many rows, each still width bytes long (V and U for every two pixels)
+        for (int y = 0, i = width * height + (top / 2) * width + left, o = croppedFrameSize; y < cropHeight / 2; y++,
+                i += width, o += cropWidth) {
+            System.arraycopy(yuv420sp, i, cropped, o, cropWidth);
+        }
+        return cropped;
+    }
 }
@@ -0,0 +1,146 @@
+package com.jwetherell.motion_detection.image;
+
+/**
+ * This class holds a summed-area table (integral image) of a luma image, built
+ * in a single pass per frame, from which the sum of any rectangle of pixels
+ * can be read in constant time, whatever its size. The table is reused for
+ * every frame of the same size.
+ *
+ * Sums are held in ints, so for very large images the table's corner values
+ * may overflow; as the sum of a rectangle is calculated with wrapping
+ * arithmetic, it is still exact as long as the rectangle's own sum fits in an
+ * int (i.e., up to around 8 million pixels of 255).
+ */
+public class IntegralImage {
+
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private int mStride = 0;
+    private int[] mTable = null;
+
+    private void resize(int width, int height) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Image must not be empty");
+
+        int size = (width + 1) * (height + 1);
+        if (mTable == null || mTable.length != size) mTable = new int[size]; // first row and column stay zero
+        mWidth = width;
+        mHeight = height;
+        mStride = width + 1;
+    }
+
+    /**
+     * Build the table from an image of luma values.
+     *
+     * @param luma
+     *            int array of the luma image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @throws NullPointerException
+     *             if luma is NULL.
+     * @throws IllegalArgumentException
+     *             if the image is empty or luma is too small.
+     */
+    public void build(int[] luma, int width, int height) {
+        if (luma == null) throw new NullPointerException();
+        if (luma.length < width * height) throw new IllegalArgumentException("Luma array is too small");
+
+        resize(width, height);
+        final int[] table = mTable;
+        final int stride = mStride;
+        for (int y = 0, yp = 0, t = stride + 1; y < height; y++, t++) {
+            int rowSum = 0;
+            for (int x = 0; x < width; x++, yp++, t++) {
+                rowSum += luma[yp];
+                table[t] = table[t - stride] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * Build the table directly from the Y plane of a YUV420SP (NV21) image,
+     * without decoding it.
+     *
+     * @param yuv420sp
+     *            byte array of the YUV420SP image.
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @throws NullPointerException
+     *             if yuv420sp is NULL.
+     * @throws IllegalArgumentException
+     *             if the image is empty or yuv420sp is too small.
+     */
+    public void build(byte[] yuv420sp, int width, int height) {
+        if (yuv420sp == null) throw new NullPointerException();
+        if (yuv420sp.length < width * height) throw new IllegalArgumentException("YUV array is too small");
+
+        resize(width, height);
+        final int[] table = mTable;
+        final int stride = mStride;
+        for (int y = 0, yp = 0, t = stride + 1; y < height; y++, t++) {
+            int rowSum = 0;
+            for (int x = 0; x < width; x++, yp++, t++) {
+                rowSum += (0xff & yuv420sp[yp]);
+                table[t] = table[t - stride] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * Get the sum of a rectangle of pixels.
+     *
+     * @param left
+     *            First column of the rectangle.
+     * @param top
+     *            First row of the rectangle.
+     * @param right
+     *            Column after the last column of the rectangle.
+     * @param bottom
+     *            Row after the last row of the rectangle.
+     * @return int sum of every pixel in the rectangle.
+     */
+    public int getSum(int left, int top, int right, int bottom) {
+        final int[] table = mTable;
+        final int topRow = top * mStride;
+        final int bottomRow = bottom * mStride;
+        return table[bottomRow + right] - table[bottomRow + left] - table[topRow + right] + table[topRow + left];
+    }
+
+    /**
+     * Get the mean of a rectangle of pixels, rounded down.
+     *
+     * @param left
+     *            First column of the rectangle.
+     * @param top
+     *            First row of the rectangle.
+     * @param right
+     *            Column after the last column of the rectangle.
+     * @param bottom
+     *            Row after the last row of the rectangle.
+     * @return int mean of the pixels in the rectangle.
+     */
+    public int getMean(int left, int top, int right, int bottom) {
+        return getSum(left, top, right, bottom) / ((right - left) * (bottom - top));
+    }
+
+    /**
+     * Get the width of the image the table was last built from.
+     *
+     * @return integer representing the width.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get the height of the image the table was last built from.
+     *
+     * @return integer representing the height.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+}
@@ -0,0 +1,187 @@
+package com.jwetherell.motion_detection.image;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is used to split the processing of an image into horizontal
+ * bands of rows that run at the same time on a pool of threads shared by all
+ * processors. The calling thread always processes the first band itself, and
+ * the integer results of each band (e.g., a count of different pixels) are
+ * summed once every band has finished.
+ *
+ * Images smaller than the processor's minimum size are processed sequentially
+ * on the calling thread, as the cost of handing work to other threads would
+ * outweigh any gain.
+ */
+public class ParallelFrameProcessor {
+
+    /**
+     * A unit of work that can be run over any contiguous range of rows.
+     * Implementations must only write to the rows they are given.
+     */
+    public interface RowTask {
+
+        /**
+         * Process a band of rows.
+         *
+         * @param firstRow
+         *            First row to process.
+         * @param endRow
+         *            Row after the last row to process.
+         * @return int result for this band, summed with all other bands.
+         */
+        public int processRows(int firstRow, int endRow);
+    }
+
+    private static final int sThreadCount = Runtime.getRuntime().availableProcessors();
+    private static final int mMinimumBandRows = 8; // Avoid bands that are too small to be worth scheduling
+
+    private static ExecutorService sExecutor = null;
+
+    private final int mMinimumPixels;
+    private final Band[] mBands;
+    private final Object mLock = new Object();
+    private int mPending = 0;
+    private Throwable mFailure = null;
+
+    /**
+     * Create a processor that only runs in parallel for images of at least
+     * the given size.
+     *
+     * @param minimumPixels
+     *            Smallest image (width * height) to process in parallel.
+     */
+    public ParallelFrameProcessor(int minimumPixels) {
+        mMinimumPixels = minimumPixels;
+        mBands = new Band[sThreadCount];
+        for (int i = 0; i < mBands.length; i++) {
+            mBands[i] = new Band();
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            // one fewer thread than cores, as the calling thread always takes the first band
+            int threads = Math.max(1, sThreadCount - 1);
+            sExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private int mCount = 0;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "FrameBand-" + (mCount++));
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Would an image of this size be processed in parallel.
+     *
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @return True if the image would be split into more than one band.
+     */
+    public boolean isParallel(int width, int height) {
+        return getBandCount(width, height) > 1;
+    }
+
+    private int getBandCount(int width, int height) {
+        if (sThreadCount <= 1 || width * height < mMinimumPixels) return 1;
+        return Math.max(1, Math.min(mBands.length, height / mMinimumBandRows));
+    }
+
+    /**
+     * Run the given task over every row of an image, in parallel if the image
+     * is large enough.
+     *
+     * @param width
+     *            Width of the image.
+     * @param height
+     *            Height of the image.
+     * @param task
+     *            RowTask to run.
+     * @return int sum of the results of every band.
+     * @throws NullPointerException
+     *             if task is NULL.
+     */
+    public synchronized int process(int width, int height, RowTask task) {
+        if (task == null) throw new NullPointerException();
+
+        final int bandCount = getBandCount(width, height);
+        if (bandCount <= 1) return task.processRows(0, height);
+
+        final int rowsPerBand = (height + bandCount - 1) / bandCount;
+        synchronized (mLock) {
+            mPending = bandCount - 1;
+            mFailure = null;
+        }
+
+        ExecutorService executor = getExecutor();
+        for (int b = 1; b < bandCount; b++) {
+            Band band = mBands[b];
+            band.mTask = task;
+            band.mFirstRow = Math.min(height, b * rowsPerBand);
+            band.mEndRow = Math.min(height, (b + 1) * rowsPerBand);
+            band.mResult = 0;
+            executor.execute(band);
+        }
+
+        int total = 0;
+        boolean interrupted = false;
+        try {
+            total = task.processRows(0, Math.min(height, rowsPerBand));
+        } finally {
+            // other bands still reference the task, so we must always wait for them
+            synchronized (mLock) {
+                while (mPending > 0) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        if (mFailure != null) throw new RuntimeException(mFailure);
+        for (int b = 1; b < bandCount; b++) {
+            total += mBands[b].mResult;
+            mBands[b].mTask = null;
+        }
+        return total;
+    }
+
+    private class Band implements Runnable {
+        private RowTask mTask;
+        private int mFirstRow;
+        private int mEndRow;
+        private int mResult;
+
+        @Override
+        public void run() {
+            try {
+                mResult = mTask.processRows(mFirstRow, mEndRow);
+            } catch (Throwable t) {
+                synchronized (mLock) {
+                    mFailure = t;
+                }
+            } finally {
+                synchronized (mLock) {
+                    mPending--;
+                    if (mPending <= 0) mLock.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.jwetherell.motion_detection.recording;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * This class appends raw camera preview frames (e.g., YUV420SP / NV21) to a
+ * file, each with its timestamp and size, so that they can be replayed later
+ * through any detector with {@link FrameReplay}.
+ *
+ * The file starts with a header of the magic number and format version, then
+ * holds one record per frame, all big-endian:
+ *
+ * <pre>
+ * long  timestamp (milliseconds)
+ * int   width
+ * int   height
+ * int   length (bytes of frame data: always width * height * 3 / 2)
+ * byte[length] frame data
+ * </pre>
+ *
+ * Recording stops once the file would grow past its maximum size. When an
+ * existing recording is reopened, any partial record left at its end (e.g.,
+ * by a recording that was interrupted) is removed before appending.
+ */
+public class FrameRecorder implements Closeable {
+
+    static final int MAGIC = 0x4e563231; // "NV21"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 20;
+
+    private final DataOutputStream mOutput;
+    private final long mMaxBytes;
+    private long mBytesWritten;
+    private int mFrameCount = 0;
+    private boolean mClosed = false;
+
+    /**
+     * Open a file for recording. If it is already a recording in this format,
+     * it is cut back to the end of its last complete frame and appended to;
+     * otherwise it is replaced by a new recording.
+     *
+     * @param file
+     *            File to record to.
+     * @param maxBytes
+     *            Largest size the file may grow to.
+     * @throws IOException
+     *             if the file cannot be opened or written.
+     */
+    public FrameRecorder(File file, long maxBytes) throws IOException {
+        if (file == null) throw new NullPointerException();
+
+        long existingBytes = getRecordedLength(file);
+        if (existingBytes > 0) {
+            RandomAccessFile existing = new RandomAccessFile(file, "rw");
+            try {
+                existing.setLength(existingBytes);
+            } finally {
+                existing.close();
+            }
+        }
+        mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, existingBytes > 0),
+                64 * 1024));
+        mMaxBytes = maxBytes;
+        mBytesWritten = existingBytes;
+        if (existingBytes == 0) {
+            mOutput.writeInt(MAGIC);
+            mOutput.writeInt(VERSION);
+            mBytesWritten = HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Check whether a record's header describes a frame that could have been
+     * written by this class.
+     *
+     * @param width
+     *            Width from the record.
+     * @param height
+     *            Height from the record.
+     * @param length
+     *            Length from the record.
+     * @return True if the size is positive and the length matches it.
+     */
+    static boolean isValidRecord(int width, int height, int length) {
+        return width > 0 && height > 0 && (long) width * height * 3 / 2 == length;
+    }
+
+    // The length of the file up to the end of its last complete record, or 0
+    // if it does not exist or is not a recording in this format
+    private static long getRecordedLength(File file) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) return 0;
+
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) return 0;
+
+            long size = input.length();
+            long position = HEADER_SIZE;
+            while (position + RECORD_HEADER_SIZE <= size) {
+                input.seek(position + 8); // Skip the timestamp
+                int width = input.readInt();
+                int height = input.readInt();
+                int length = input.readInt();
+                if (!isValidRecord(width, height, length) || position + RECORD_HEADER_SIZE + length > size) break;
+                position += RECORD_HEADER_SIZE + length;
+            }
+            return position;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Append a frame. Only the first width * height * 3 / 2 bytes of data
+     * (i.e., one YUV420SP image) are recorded.
+     *
+     * @param data
+     *            byte array of the frame.
+     * @param width
+     *            Width of the frame.
+     * @param height
+     *            Height of the frame.
+     * @param timestamp
+     *            Time of the frame, in milliseconds.
+     * @return True if the frame was recorded; false if the recording is full
+     *         or closed.
+     * @throws IOException
+     *             if the frame cannot be written.
+     * @throws IllegalArgumentException
+     *             if the size is not positive, or data is too small for it.
+     */
+    public synchronized boolean record(byte[] data, int width, int height, long timestamp) throws IOException {
+        if (data == null) throw new NullPointerException();
+        if (width <= 0 || height <= 0 || (long) width * height * 3 / 2 > data.length) {
+            throw new IllegalArgumentException("Frame data does not match its size");
+        }
+        int length = width * height * 3 / 2;
+        if (mClosed || mBytesWritten + RECORD_HEADER_SIZE + length > mMaxBytes) return false;
+
+        mOutput.writeLong(timestamp);
+        mOutput.writeInt(width);
+        mOutput.writeInt(height);
+        mOutput.writeInt(length);
+        mOutput.write(data, 0, length);
+        mBytesWritten += RECORD_HEADER_SIZE + length;
+        mFrameCount++;
+        return true;
+    }
+
+    /**
+     * Get the number of frames recorded since the file was opened.
+     *
+     * @return int number of frames.
+     */
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Flush and close the file. Later frames are ignored.
+     *
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) return;
+        mClosed = true;
+        mOutput.close();
+    }
+}
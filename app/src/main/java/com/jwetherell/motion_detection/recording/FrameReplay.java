@@ -0,0 +1,265 @@
+package com.jwetherell.motion_detection.recording;
+
+import com.jwetherell.motion_detection.detection.IMotionDetection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads frames recorded by {@link FrameRecorder} from a memory
+ * mapped file, and can replay them through any detector as fast as it will
+ * run. It has no Android dependencies, so recordings made on a device can be
+ * replayed on a desktop JVM (e.g., in unit tests or benchmarks) to compare
+ * decisions and throughput across builds.
+ *
+ * Frames are copied out of the mapping into a single reusable array (the
+ * largest frame in the file) when they are first asked for, so reading
+ * frames allocates nothing. They can also be read in place, through a view of
+ * the mapping (see {@link ReplayFrameSource}).
+ */
+public class FrameReplay implements Closeable {
+
+    /**
+     * Receives the decision for each replayed frame.
+     */
+    public interface Listener {
+
+        /**
+         * Called after each frame has been passed to the detector.
+         *
+         * @param index
+         *            Index of the frame in the recording.
+         * @param timestamp
+         *            Time the frame was recorded, in milliseconds.
+         * @param motion
+         *            True if the detector reported motion.
+         */
+        public void onFrame(int index, long timestamp, boolean motion);
+    }
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int[] mOffsets; // Position of each record in the file
+    private final byte[] mFrame;
+
+    private int mIndex = -1;
+    private long mTimestamp;
+    private int mWidth;
+    private int mHeight;
+    private int mLength;
+    private boolean mFrameCopied;
+
+    /**
+     * Open and index a recording.
+     *
+     * @param file
+     *            File to replay.
+     * @throws IOException
+     *             if the file cannot be read, is larger than 2GB, or is not a
+     *             recording.
+     */
+    public FrameReplay(File file) throws IOException {
+        if (file == null) throw new NullPointerException();
+
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            long size = mFile.length();
+            if (size > Integer.MAX_VALUE) throw new IOException("Recording is too large to map");
+            mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < FrameRecorder.HEADER_SIZE || mBuffer.getInt(0) != FrameRecorder.MAGIC) {
+                throw new IOException("Not a frame recording");
+            }
+            if (mBuffer.getInt(4) != FrameRecorder.VERSION) throw new IOException("Unsupported recording version");
+
+            // Index every complete record, stopping at the first one that is
+            // partial or invalid (e.g., left by an interrupted recording)
+            int count = 0;
+            int maxLength = 0;
+            int[] offsets = new int[64];
+            long position = FrameRecorder.HEADER_SIZE;
+            while (position + FrameRecorder.RECORD_HEADER_SIZE <= size) {
+                int width = mBuffer.getInt((int) position + 8);
+                int height = mBuffer.getInt((int) position + 12);
+                int length = mBuffer.getInt((int) position + 16);
+                if (!FrameRecorder.isValidRecord(width, height, length) ||
+                        position + FrameRecorder.RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                if (count == offsets.length) {
+                    int[] grown = new int[count * 2];
+                    System.arraycopy(offsets, 0, grown, 0, count);
+                    offsets = grown;
+                }
+                offsets[count++] = (int) position;
+                maxLength = Math.max(maxLength, length);
+                position += FrameRecorder.RECORD_HEADER_SIZE + length;
+            }
+            mOffsets = new int[count];
+            System.arraycopy(offsets, 0, mOffsets, 0, count);
+            mFrame = new byte[maxLength];
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of frames in the recording.
+     *
+     * @return int number of frames.
+     */
+    public int getFrameCount() {
+        return mOffsets.length;
+    }
+
+    /**
+     * Move to a frame, so that it is returned by the next call to
+     * {@link #next()}.
+     *
+     * @param index
+     *            Index of the frame.
+     */
+    public void seek(int index) {
+        if (index < 0 || index > mOffsets.length) throw new IndexOutOfBoundsException();
+        mIndex = index - 1;
+    }
+
+    /**
+     * Read the next frame.
+     *
+     * @return True if a frame was read; false at the end of the recording.
+     */
+    public boolean next() {
+        if (mIndex + 1 >= mOffsets.length) return false;
+
+        mIndex++;
+        int offset = mOffsets[mIndex];
+        mTimestamp = mBuffer.getLong(offset);
+        mWidth = mBuffer.getInt(offset + 8);
+        mHeight = mBuffer.getInt(offset + 12);
+        mLength = mBuffer.getInt(offset + 16);
+        mFrameCopied = false;
+        return true;
+    }
+
+    /**
+     * Get the data of the current frame. The array is reused by the next call
+     * to {@link #next()}, and may be longer than the frame.
+     *
+     * @return byte array of the frame.
+     */
+    public byte[] getFrame() {
+        if (!mFrameCopied && mIndex >= 0) {
+            mBuffer.position(getFrameOffset());
+            mBuffer.get(mFrame, 0, mLength);
+            mFrameCopied = true;
+        }
+        return mFrame;
+    }
+
+    /**
+     * Get the position of the current frame's data in the recording, for
+     * reading it in place through {@link #getView()}.
+     *
+     * @return int offset in bytes.
+     */
+    public int getFrameOffset() {
+        if (mIndex < 0) throw new IllegalStateException("No current frame");
+
+        return mOffsets[mIndex] + FrameRecorder.RECORD_HEADER_SIZE;
+    }
+
+    /**
+     * Get a new read-only view of the whole recording, with its own position,
+     * for reading frames in place without copying them.
+     *
+     * @return ByteBuffer view of the mapped file.
+     */
+    public ByteBuffer getView() {
+        return mBuffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the length of the current frame's data.
+     *
+     * @return int number of bytes.
+     */
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * Get the index of the current frame.
+     *
+     * @return int index, or -1 before the first frame.
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Get the time the current frame was recorded.
+     *
+     * @return long time in milliseconds.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Get the width of the current frame.
+     *
+     * @return int width.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get the height of the current frame.
+     *
+     * @return int height.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Replay every frame from the start of the recording through a detector,
+     * as fast as it will run.
+     *
+     * @param detector
+     *            IMotionDetection to pass each frame to.
+     * @param listener
+     *            Listener to receive each decision, or null.
+     * @return int number of frames in which motion was detected.
+     */
+    public int replay(IMotionDetection detector, Listener listener) {
+        if (detector == null) throw new NullPointerException();
+
+        int motionFrames = 0;
+        seek(0);
+        while (next()) {
+            boolean motion = detector.detect(getFrame(), mWidth, mHeight);
+            if (motion) motionFrames++;
+            if (listener != null) listener.onFrame(mIndex, mTimestamp, motion);
+        }
+        return motionFrames;
+    }
+
+    /**
+     * Close the recording.
+     *
+     * @throws IOException
+     *             if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
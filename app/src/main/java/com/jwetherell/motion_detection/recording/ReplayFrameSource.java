@@ -0,0 +1,122 @@
+package com.jwetherell.motion_detection.recording;
+
+import com.jwetherell.motion_detection.source.FrameSource;
+import com.jwetherell.motion_detection.source.LumaFrame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a {@link FrameSource} that delivers the frames of a
+ * recording, reading each frame's Y plane in place from the memory mapped
+ * file, as a camera would from its own buffers. Frames are only delivered
+ * when {@link #deliverNext()} is called, on the calling thread, so code that
+ * consumes frames can be tested deterministically on a desktop JVM.
+ *
+ * Like a camera, the source has a fixed number of frames; a frame that
+ * arrives while all of them are held by the listener is dropped.
+ */
+public class ReplayFrameSource implements FrameSource, LumaFrame.Owner {
+
+    private final FrameReplay mReplay;
+    private final LumaFrame[] mFrames;
+    private final ByteBuffer[] mViews;
+    private final boolean[] mHeld;
+
+    private Listener mListener = null;
+    private int mDroppedFrames = 0;
+
+    /**
+     * Create a source for a recording.
+     *
+     * @param replay
+     *            FrameReplay to deliver frames from, which should not be read
+     *            by anything else while the source is running.
+     * @param frameCount
+     *            Number of frames that the listener may hold at once.
+     */
+    public ReplayFrameSource(FrameReplay replay, int frameCount) {
+        if (replay == null) throw new NullPointerException();
+        if (frameCount < 1) throw new IllegalArgumentException("At least one frame is required");
+
+        mReplay = replay;
+        mFrames = new LumaFrame[frameCount];
+        mViews = new ByteBuffer[frameCount];
+        mHeld = new boolean[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            mFrames[i] = new LumaFrame(this);
+            mViews[i] = replay.getView();
+        }
+    }
+
+    /**
+     * Start delivering frames from the beginning of the recording.
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void start(Listener listener) {
+        if (listener == null) throw new NullPointerException();
+
+        mListener = listener;
+        mDroppedFrames = 0;
+        mReplay.seek(0);
+    }
+
+    @Override
+    public synchronized void stop() {
+        mListener = null;
+    }
+
+    /**
+     * Deliver the next frame of the recording to the listener, if it has a
+     * frame free.
+     *
+     * @return True if a frame was read (whether or not it was dropped); false
+     *         at the end of the recording, or if the source is stopped.
+     */
+    public boolean deliverNext() {
+        Listener listener;
+        LumaFrame frame = null;
+        synchronized (this) {
+            listener = mListener;
+            if (listener == null || !mReplay.next()) return false;
+
+            for (int i = 0; i < mFrames.length; i++) {
+                if (!mHeld[i]) {
+                    mHeld[i] = true;
+                    mViews[i].position(mReplay.getFrameOffset());
+                    frame = mFrames[i];
+                    frame.set(mViews[i], mReplay.getWidth(), mReplay.getWidth(), mReplay.getHeight(),
+                            mReplay.getTimestamp());
+                    break;
+                }
+            }
+            if (frame == null) {
+                mDroppedFrames++;
+                return true;
+            }
+        }
+        listener.onFrame(frame);
+        return true;
+    }
+
+    @Override
+    public synchronized void release(LumaFrame frame) {
+        for (int i = 0; i < mFrames.length; i++) {
+            if (mFrames[i] == frame) {
+                if (!mHeld[i]) throw new IllegalStateException("Frame released twice");
+                mHeld[i] = false;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Frame does not belong to this source");
+    }
+
+    /**
+     * Get the number of frames dropped because the listener held every frame.
+     *
+     * @return int number of dropped frames.
+     */
+    public synchronized int getDroppedFrameCount() {
+        return mDroppedFrames;
+    }
+}
@@ -0,0 +1,47 @@
+package com.jwetherell.motion_detection.source;
+
+/**
+ * This interface is used to represent anything that produces frames for
+ * motion detection: a camera (through whichever camera API the device
+ * supports), or a recording replayed on a desktop JVM. Code that consumes
+ * frames only depends on this interface, so it can be tested without a
+ * camera.
+ *
+ * Frames are delivered on the source's own thread, and belong to the
+ * listener until it releases them. A source only has a few frames, so
+ * listeners must release each one as soon as they are done with it (straight
+ * away, if it will not be analysed); while every frame is held, new frames
+ * are dropped.
+ */
+public interface FrameSource {
+
+    /**
+     * Receives frames from a source.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each new frame. The listener must call
+         * {@link LumaFrame#release()} once it no longer needs the frame, from
+         * any thread.
+         *
+         * @param frame
+         *            LumaFrame that was captured.
+         */
+        public void onFrame(LumaFrame frame);
+    }
+
+    /**
+     * Start delivering frames.
+     *
+     * @param listener
+     *            Listener to deliver frames to.
+     */
+    public void start(Listener listener);
+
+    /**
+     * Stop delivering frames. Frames that are still held may be released
+     * afterwards; their memory stays valid until they are.
+     */
+    public void stop();
+}
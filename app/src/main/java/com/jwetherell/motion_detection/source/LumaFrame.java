@@ -0,0 +1,133 @@
+package com.jwetherell.motion_detection.source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class describes one frame from a {@link FrameSource}: its luma (Y)
+ * plane, read directly from the source's own memory (e.g., a camera preview
+ * buffer or an Image plane) rather than copied. Each source owns a small,
+ * fixed set of frames that are reused, so delivering a frame allocates
+ * nothing.
+ *
+ * The plane starts at the buffer's current position, and pixel (x, y) is at
+ * position + y * rowStride + x. Readers must use absolute gets, so that the
+ * buffer's position is never changed.
+ *
+ * A frame belongs to whoever it was delivered to until they call
+ * {@link #release()}, after which it must not be used again.
+ */
+public class LumaFrame {
+
+    /**
+     * Takes frames back from their users, once each is released.
+     */
+    public interface Owner {
+
+        /**
+         * Called when a frame is released. May be called from any thread.
+         *
+         * @param frame
+         *            LumaFrame that has been released.
+         */
+        public void release(LumaFrame frame);
+    }
+
+    private final Owner mOwner;
+
+    private ByteBuffer mPlane;
+    private int mRowStride;
+    private int mWidth;
+    private int mHeight;
+    private long mTimestamp;
+
+    /**
+     * Create a frame.
+     *
+     * @param owner
+     *            Owner to return the frame to when it is released.
+     */
+    public LumaFrame(Owner owner) {
+        if (owner == null) throw new NullPointerException();
+
+        mOwner = owner;
+    }
+
+    /**
+     * Describe the frame's contents, before delivering it.
+     *
+     * @param plane
+     *            ByteBuffer holding the luma plane, from its current position.
+     * @param rowStride
+     *            Distance in bytes between the start of each row.
+     * @param width
+     *            Width of the frame.
+     * @param height
+     *            Height of the frame.
+     * @param timestamp
+     *            Time the frame was captured, in milliseconds (in the
+     *            source's own timebase).
+     */
+    public void set(ByteBuffer plane, int rowStride, int width, int height, long timestamp) {
+        if (plane == null) throw new NullPointerException();
+        if (rowStride < width) throw new IllegalArgumentException("Row stride is smaller than the width");
+
+        mPlane = plane;
+        mRowStride = rowStride;
+        mWidth = width;
+        mHeight = height;
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * Get the luma plane, which starts at the buffer's current position.
+     *
+     * @return ByteBuffer of the luma plane.
+     */
+    public ByteBuffer getPlane() {
+        return mPlane;
+    }
+
+    /**
+     * Get the distance in bytes between the start of each row.
+     *
+     * @return int row stride.
+     */
+    public int getRowStride() {
+        return mRowStride;
+    }
+
+    /**
+     * Get the width of the frame.
+     *
+     * @return int width.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get the height of the frame.
+     *
+     * @return int height.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get the time the frame was captured.
+     *
+     * @return long time in milliseconds, in the source's own timebase.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Give the frame back to its source, so that its memory can be reused.
+     * May be called from any thread.
+     */
+    public void release() {
+        mOwner.release(this);
+    }
+}
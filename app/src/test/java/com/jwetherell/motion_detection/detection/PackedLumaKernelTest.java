@@ -0,0 +1,111 @@
+package com.jwetherell.motion_detection.detection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.jwetherell.motion_detection.image.ParallelFrameProcessor;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the packed (SWAR) comparison counts exactly the same pixels as
+ * the scalar comparison, and that {@link YuvLumaMotionDetection} reaches the
+ * same decisions with and without packing.
+ */
+public class PackedLumaKernelTest {
+
+    private static final int VALUES = 256;
+    private static final int LANES = 8;
+
+    private static int scalarCount(long a, long b, int pixelThreshold) {
+        int count = 0;
+        for (int lane = 0; lane < LANES; lane++) {
+            int shift = lane * 8;
+            int difference = Math.abs((int) ((a >>> shift) & 0xff) - (int) ((b >>> shift) & 0xff));
+            if (difference >= pixelThreshold) count++;
+        }
+        return count;
+    }
+
+    // Every pair of values, in every lane, with random values in the other
+    // lanes so that a borrow or carry leaking between lanes would show
+    @Test
+    public void everyPairInEveryLaneMatchesScalar() {
+        long neighbours = 0x9E3779B97F4A7C15L;
+        for (int threshold = 1; threshold <= 128; threshold++) {
+            long bias = PackedLumaKernel.getThresholdBias(threshold);
+            for (int lane = 0; lane < LANES; lane++) {
+                int shift = lane * 8;
+                long laneMask = 0xffL << shift;
+                for (int a = 0; a < VALUES; a++) {
+                    for (int b = 0; b < VALUES; b++) {
+                        // xorshift, as it is much cheaper than Random for this many words
+                        neighbours ^= neighbours << 13;
+                        neighbours ^= neighbours >>> 7;
+                        neighbours ^= neighbours << 17;
+                        long wordA = (neighbours & ~laneMask) | ((long) a << shift);
+                        long wordB = (Long.rotateLeft(neighbours, 29) & ~laneMask) | ((long) b << shift);
+                        int expected = scalarCount(wordA, wordB, threshold);
+                        int actual = PackedLumaKernel.countDifferent(wordA, wordB, bias);
+                        if (expected != actual) {
+                            assertEquals("a=" + a + " b=" + b + " lane=" + lane + " threshold=" + threshold,
+                                    expected, actual);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdAboveRangeRejected() {
+        PackedLumaKernel.getThresholdBias(129);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdBelowRangeRejected() {
+        PackedLumaKernel.getThresholdBias(0);
+    }
+
+    // An odd size, so that every frame ends with a pixel that does not fill a
+    // word. Each frame changes exactly as many whole-word pixels as the
+    // threshold allows, so it only has motion if the last pixel is counted too.
+    private static void comparePackedDetection(int width, int height, boolean parallel) {
+        final int size = width * height;
+        final int wordPixels = size & ~7;
+        final int thresholdPixels = (int) (size * 0.01f); // Motion needs more changed pixels than this
+        Random random = new Random(size);
+        YuvLumaMotionDetection scalar = new YuvLumaMotionDetection(0);
+        YuvLumaMotionDetection packed = new YuvLumaMotionDetection(0,
+                parallel ? new ParallelFrameProcessor(0) : null, true);
+        byte[] frame = new byte[size * 3 / 2];
+        random.nextBytes(frame);
+        assertEquals(scalar.detect(frame, width, height), packed.detect(frame, width, height));
+        for (int f = 0; f < 20; f++) {
+            frame = frame.clone();
+            boolean[] changed = new boolean[wordPixels];
+            for (int i = 0; i < thresholdPixels; i++) {
+                int pixel;
+                do {
+                    pixel = random.nextInt(wordPixels);
+                } while (changed[pixel]);
+                changed[pixel] = true;
+                frame[pixel] ^= (byte) 0x80;
+            }
+            boolean tailChanged = (f % 2) == 0;
+            if (tailChanged) frame[size - 1] ^= (byte) 0x80;
+
+            assertEquals("Frame " + f, tailChanged, scalar.detect(frame, width, height));
+            assertEquals("Frame " + f, tailChanged, packed.detect(frame, width, height));
+            assertArrayEquals(scalar.getPrevious(), packed.getPrevious());
+        }
+    }
+
+    @Test
+    public void packedDetectionMatchesScalarWithOddWidth() {
+        comparePackedDetection(101, 37, false);
+        comparePackedDetection(101, 37, true);
+    }
+}
@@ -0,0 +1,106 @@
+package com.jwetherell.motion_detection.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link PyramidMotionDetection} against
+ * {@link YuvLumaMotionDetection}, which compares every pixel, using a square
+ * that jumps around over a static textured background.
+ *
+ * The pyramid detector must never report motion that a full comparison does
+ * not. It may miss frames whose changed pixels only just reach the motion
+ * threshold, when some of them leave their tiles' means unchanged: none are
+ * accepted for a plain square, and at most 1% of motion frames for a
+ * textured square over a similar texture (the worst case for tile means).
+ */
+public class PyramidMotionDetectionTest {
+
+    private static final int WIDTH = 324; // Not a multiple of the tile size, so the edges are covered too
+    private static final int HEIGHT = 243;
+    private static final int SQUARE_SIZE = 40;
+    private static final int MAX_JUMP = 60;
+    private static final int FRAME_COUNT = 600;
+    private static final float TEXTURED_MISS_RATE = 0.01f;
+
+    private static byte[] texture(Random random, int size) {
+        byte[] texture = new byte[size];
+        for (int i = 0; i < size; i++) {
+            texture[i] = (byte) (40 + random.nextInt(170));
+        }
+        return texture;
+    }
+
+    // Returns the number of frames in which the full comparison saw motion,
+    // and the number of those that the pyramid detector missed
+    private static int[] compare(long seed, boolean texturedSquare) {
+        Random random = new Random(seed);
+        byte[] background = texture(random, WIDTH * HEIGHT * 3 / 2);
+        byte[] square = new byte[SQUARE_SIZE * SQUARE_SIZE];
+        if (texturedSquare) {
+            square = texture(random, square.length);
+        } else {
+            Arrays.fill(square, (byte) 230);
+        }
+
+        PyramidMotionDetection pyramid = new PyramidMotionDetection();
+        YuvLumaMotionDetection full = new YuvLumaMotionDetection();
+        int x = WIDTH / 2;
+        int y = HEIGHT / 2;
+        int motionFrames = 0;
+        int missedFrames = 0;
+        for (int f = 0; f < FRAME_COUNT; f++) {
+            x = Math.max(0, Math.min(WIDTH - SQUARE_SIZE, x + random.nextInt(2 * MAX_JUMP + 1) - MAX_JUMP));
+            y = Math.max(0, Math.min(HEIGHT - SQUARE_SIZE, y + random.nextInt(2 * MAX_JUMP + 1) - MAX_JUMP));
+            byte[] frame = background.clone();
+            for (int j = 0; j < SQUARE_SIZE; j++) {
+                System.arraycopy(square, j * SQUARE_SIZE, frame, (y + j) * WIDTH + x, SQUARE_SIZE);
+            }
+
+            boolean expected = full.detect(frame, WIDTH, HEIGHT);
+            boolean actual = pyramid.detect(frame, WIDTH, HEIGHT);
+            assertFalse("Frame " + f + " has motion that a full comparison does not see", actual && !expected);
+            if (expected) {
+                motionFrames++;
+                if (!actual) missedFrames++;
+            }
+        }
+        return new int[] { motionFrames, missedFrames };
+    }
+
+    @Test
+    public void plainSquareMatchesFullComparison() {
+        for (long seed = 1; seed <= 3; seed++) {
+            int[] counts = compare(seed, false);
+            assertTrue(counts[0] > FRAME_COUNT / 2);
+            assertEquals("Missed motion frames", 0, counts[1]);
+        }
+    }
+
+    @Test
+    public void texturedSquareRarelyMissed() {
+        for (long seed = 1; seed <= 3; seed++) {
+            int[] counts = compare(seed, true);
+            assertTrue(counts[0] > FRAME_COUNT / 2);
+            assertTrue("Missed " + counts[1] + " of " + counts[0] + " motion frames",
+                    counts[1] <= counts[0] * TEXTURED_MISS_RATE);
+        }
+    }
+
+    @Test
+    public void staticSceneComparesNoTiles() {
+        byte[] frame = texture(new Random(7), WIDTH * HEIGHT * 3 / 2);
+        PyramidMotionDetection pyramid = new PyramidMotionDetection();
+        assertFalse(pyramid.detect(frame, WIDTH, HEIGHT));
+        for (int f = 0; f < 3; f++) {
+            assertFalse(pyramid.detect(frame.clone(), WIDTH, HEIGHT));
+            assertEquals(0f, pyramid.getCandidateFraction(), 0f);
+        }
+    }
+}
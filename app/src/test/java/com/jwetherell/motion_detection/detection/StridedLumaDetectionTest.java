@@ -0,0 +1,119 @@
+package com.jwetherell.motion_detection.detection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.jwetherell.motion_detection.source.FakeFrameSource;
+import com.jwetherell.motion_detection.source.FrameSource;
+import com.jwetherell.motion_detection.source.LumaFrame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link YuvLumaMotionDetection} reaches the same decisions, and
+ * fills the same {@link MotionResult}, whether frames are given as YUV420SP
+ * arrays or as padded Y planes read in place from a {@link FrameSource}.
+ */
+public class StridedLumaDetectionTest {
+
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+    private static final int ROW_STRIDE = WIDTH + 13;
+    private static final int FRAME_COUNT = 12;
+    private static final int SQUARE_SIZE = 16;
+
+    // A noisy background, with a bright square that moves on every other
+    // frame, so that frames with and without motion are both compared
+    private static byte[][] frames() {
+        Random random = new Random(42);
+        byte[] background = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < background.length; i++) {
+            background[i] = (byte) (40 + random.nextInt(20));
+        }
+        byte[][] frames = new byte[FRAME_COUNT][];
+        for (int f = 0; f < FRAME_COUNT; f++) {
+            byte[] yuv = new byte[WIDTH * HEIGHT * 3 / 2];
+            System.arraycopy(background, 0, yuv, 0, background.length);
+            int left = (f / 2) * 12;
+            int top = (f / 2) * 6;
+            for (int y = top; y < top + SQUARE_SIZE; y++) {
+                for (int x = left; x < left + SQUARE_SIZE; x++) {
+                    yuv[y * WIDTH + x] = (byte) 230;
+                }
+            }
+            frames[f] = yuv;
+        }
+        return frames;
+    }
+
+    private static void assertSameResult(MotionResult expected, MotionResult actual) {
+        assertEquals(expected.isMotion(), actual.isMotion());
+        assertEquals(expected.getChangedFraction(), actual.getChangedFraction(), 0f);
+        assertEquals(expected.getChangedBlocks(), actual.getChangedBlocks());
+        for (int y = 0; y < expected.getBlocksY(); y++) {
+            for (int x = 0; x < expected.getBlocksX(); x++) {
+                assertEquals(expected.isBlockChanged(x, y), actual.isBlockChanged(x, y));
+            }
+        }
+        assertEquals(expected.getRegionCount(), actual.getRegionCount());
+        for (int r = 0; r < expected.getRegionCount(); r++) {
+            assertEquals(expected.getRegionLeft(r), actual.getRegionLeft(r));
+            assertEquals(expected.getRegionTop(r), actual.getRegionTop(r));
+            assertEquals(expected.getRegionRight(r), actual.getRegionRight(r));
+            assertEquals(expected.getRegionBottom(r), actual.getRegionBottom(r));
+        }
+    }
+
+    private static void compare(int minimumPixels, boolean direct) {
+        final byte[][] frames = frames();
+        final YuvLumaMotionDetection arrayDetection = new YuvLumaMotionDetection(minimumPixels);
+        final YuvLumaMotionDetection planeDetection = new YuvLumaMotionDetection(minimumPixels);
+        final MotionResult arrayResult = new MotionResult();
+        final MotionResult planeResult = new MotionResult();
+        final int[] delivered = new int[2]; // Frames delivered, and frames with motion
+
+        FakeFrameSource source = new FakeFrameSource(frames, WIDTH, HEIGHT, ROW_STRIDE, 2, direct);
+        source.start(new FrameSource.Listener() {
+            @Override
+            public void onFrame(LumaFrame frame) {
+                int index = delivered[0]++;
+                boolean expected = arrayDetection.detect(frames[index], WIDTH, HEIGHT, arrayResult);
+                boolean actual = planeDetection.detect(frame.getPlane(), frame.getRowStride(), frame.getWidth(),
+                        frame.getHeight(), planeResult);
+                frame.release();
+
+                assertEquals("Frame " + index, expected, actual);
+                assertSameResult(arrayResult, planeResult);
+                assertArrayEquals(arrayDetection.getPrevious(), planeDetection.getPrevious());
+                if (actual) delivered[1]++;
+            }
+        });
+        while (source.deliverNext()) {
+        }
+        source.stop();
+
+        assertEquals(FRAME_COUNT, delivered[0]);
+        assertEquals(0, source.getDroppedFrameCount());
+        assertTrue("No frame had motion", delivered[1] > 0);
+        assertTrue("Every frame had motion", delivered[1] < FRAME_COUNT - 1);
+    }
+
+    @Test
+    public void heapPlaneMatchesArray() {
+        compare(0, false);
+    }
+
+    @Test
+    public void directPlaneMatchesArray() {
+        compare(0, true);
+    }
+
+    @Test
+    public void sampledPlaneMatchesArray() {
+        compare(WIDTH * HEIGHT / 16, false);
+        compare(WIDTH * HEIGHT / 16, true);
+    }
+}
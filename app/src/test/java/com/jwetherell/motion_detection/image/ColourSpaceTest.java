@@ -0,0 +1,129 @@
+package com.jwetherell.motion_detection.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the integer HSV and HLS conversions against a floating point
+ * reference of OpenCV's definitions (H as 0-180, S, V and L as 0-255, each
+ * rounded half to even), over a sampled RGB cube.
+ *
+ * V and L are exact. H and S come from reciprocal tables, as in OpenCV's
+ * 8-bit HSV conversion, so they may differ from the reference by one (H
+ * wrapping round at 180); OpenCV's own 8-bit HLS conversion is done in
+ * floating point, so that is also the accepted difference from OpenCV there.
+ */
+public class ColourSpaceTest {
+
+    private static final int STEP = 5; // 0, 5, ... 255 in each channel
+    private static final int TOLERANCE = 1;
+
+    private static final int H = 0;
+    private static final int S = 1;
+    private static final int V = 2; // Or L
+
+    private static int[] cube() {
+        int levels = 255 / STEP + 1;
+        int[] argb = new int[levels * levels * levels];
+        for (int r = 0, p = 0; r <= 255; r += STEP) {
+            for (int g = 0; g <= 255; g += STEP) {
+                for (int b = 0; b <= 255; b += STEP, p++) {
+                    argb[p] = 0xff000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+        return argb;
+    }
+
+    // Hue in degrees (0-360); channels are 0-255, kept exact as doubles
+    private static double hue(double r, double g, double b, double max, double diff) {
+        double h;
+        if (max == r) {
+            h = (g - b) * 60 / diff;
+        } else if (max == g) {
+            h = (b - r) * 60 / diff + 120;
+        } else {
+            h = (r - g) * 60 / diff + 240;
+        }
+        return (h < 0) ? h + 360 : h;
+    }
+
+    private static int[] referenceHSV(double r, double g, double b) {
+        double max = Math.max(r, Math.max(g, b));
+        double diff = max - Math.min(r, Math.min(g, b));
+        if (diff == 0) return new int[] { 0, 0, (int) max };
+
+        return new int[] { (int) Math.rint(hue(r, g, b, max, diff) / 2), (int) Math.rint(diff / max * 255),
+                (int) max };
+    }
+
+    private static int[] referenceHLS(double r, double g, double b) {
+        double max = Math.max(r, Math.max(g, b));
+        double min = Math.min(r, Math.min(g, b));
+        double diff = max - min;
+        double sum = max + min;
+        int l = (int) Math.rint(sum / 2);
+        if (diff == 0) return new int[] { 0, 0, l };
+
+        double s = (sum < 255) ? diff / sum : diff / (510 - sum);
+        return new int[] { (int) Math.rint(hue(r, g, b, max, diff) / 2), (int) Math.rint(s * 255), l };
+    }
+
+    private static void assertClose(String message, int[] expected, int hue, int saturation, int third) {
+        int hueDifference = Math.abs(expected[H] - hue) % 180;
+        assertTrue(message + " hue", Math.min(hueDifference, 180 - hueDifference) <= TOLERANCE);
+        assertTrue(message + " saturation", Math.abs(expected[S] - saturation) <= TOLERANCE);
+        assertEquals(message, expected[V], third);
+        assertTrue(message + " hue range", hue >= 0 && hue <= 180);
+    }
+
+    @Test
+    public void hsvMatchesFloatReference() {
+        int[] argb = cube();
+        byte[] hue = new byte[argb.length];
+        byte[] saturation = new byte[argb.length];
+        byte[] value = new byte[argb.length];
+        ImageProcessing.convertARGBToHSV(argb, argb.length, 1, hue, saturation, value);
+        for (int p = 0; p < argb.length; p++) {
+            int r = (argb[p] >> 16) & 0xff, g = (argb[p] >> 8) & 0xff, b = argb[p] & 0xff;
+            assertClose("rgb(" + r + "," + g + "," + b + ")", referenceHSV(r, g, b), 0xff & hue[p],
+                    0xff & saturation[p], 0xff & value[p]);
+        }
+    }
+
+    @Test
+    public void hlsMatchesFloatReference() {
+        int[] argb = cube();
+        byte[] hue = new byte[argb.length];
+        byte[] saturation = new byte[argb.length];
+        byte[] lightness = new byte[argb.length];
+        ImageProcessing.convertARGBToHSL(argb, argb.length, 1, hue, saturation, lightness);
+        for (int p = 0; p < argb.length; p++) {
+            int r = (argb[p] >> 16) & 0xff, g = (argb[p] >> 8) & 0xff, b = argb[p] & 0xff;
+            assertClose("rgb(" + r + "," + g + "," + b + ")", referenceHLS(r, g, b), 0xff & hue[p],
+                    0xff & saturation[p], 0xff & lightness[p]);
+        }
+    }
+
+    @Test
+    public void yuvDecodeMatchesRgbThenHsv() {
+        final int width = 16;
+        final int height = 8;
+        byte[] yuv = new byte[width * height * 3 / 2];
+        new Random(3).nextBytes(yuv);
+        int size = width * height;
+        byte[] hue = new byte[size], saturation = new byte[size], value = new byte[size];
+        byte[] expectedHue = new byte[size], expectedSaturation = new byte[size], expectedValue = new byte[size];
+        ImageProcessing.decodeYUV420SPtoHSV(yuv, width, height, hue, saturation, value);
+        ImageProcessing.convertARGBToHSV(ImageProcessing.decodeYUV420SPtoRGB(yuv, width, height), width, height,
+                expectedHue, expectedSaturation, expectedValue);
+        assertArrayEquals(expectedHue, hue);
+        assertArrayEquals(expectedSaturation, saturation);
+        assertArrayEquals(expectedValue, value);
+    }
+}
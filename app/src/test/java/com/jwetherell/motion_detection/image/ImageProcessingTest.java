@@ -0,0 +1,115 @@
+package com.jwetherell.motion_detection.image;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the table-based YUV to RGB conversion is bit-identical to the
+ * original per-pixel arithmetic, for every combination of Y, U and V.
+ */
+public class ImageProcessingTest {
+
+    private static final int VALUES = 256;
+
+    // the conversion as it was originally written, before lookup tables
+    private static int referenceRGB(int yValue, int uValue, int vValue) {
+        int y = yValue - 16;
+        if (y < 0) y = 0;
+        int v = vValue - 128;
+        int u = uValue - 128;
+
+        int y1192 = 1192 * y;
+        int r = (y1192 + 1634 * v);
+        int g = (y1192 - 833 * v - 400 * u);
+        int b = (y1192 + 2066 * u);
+
+        if (r < 0) r = 0;
+        else if (r > 262143) r = 262143;
+        if (g < 0) g = 0;
+        else if (g > 262143) g = 262143;
+        if (b < 0) b = 0;
+        else if (b > 262143) b = 262143;
+
+        return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+    }
+
+    @Test
+    public void fullResolutionDecodeMatchesReferenceForAllValues() {
+        // one image per V value: U increases along each row (one VU pair per
+        // two pixels), and Y increases down the image
+        final int width = VALUES * 2;
+        final int height = VALUES;
+        byte[] yuv = new byte[ImageProcessing.getYUV420SPSize(width, height)];
+        int[] rgb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                yuv[y * width + x] = (byte) y;
+            }
+        }
+        for (int v = 0; v < VALUES; v++) {
+            for (int uvp = width * height; uvp < yuv.length; uvp += 2) {
+                yuv[uvp] = (byte) v;
+                yuv[uvp + 1] = (byte) (((uvp - width * height) % width) >> 1);
+            }
+            ImageProcessing.decodeYUV420SPtoRGB(yuv, width, height, rgb);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int expected = referenceRGB(y, x >> 1, v);
+                    if (rgb[y * width + x] != expected) {
+                        assertEquals("Y=" + y + " U=" + (x >> 1) + " V=" + v, expected, rgb[y * width + x]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sampledDecodeMatchesReferenceForAllValues() {
+        // as above, but with every 2x2 block uniform, so a sample factor of 2
+        // averages to exact values
+        final int width = VALUES * 2;
+        final int height = VALUES * 2;
+        byte[] yuv = new byte[ImageProcessing.getYUV420SPSize(width, height)];
+        int[] rgb = new int[VALUES * VALUES];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                yuv[y * width + x] = (byte) (y >> 1);
+            }
+        }
+        for (int v = 0; v < VALUES; v++) {
+            for (int uvp = width * height; uvp < yuv.length; uvp += 2) {
+                yuv[uvp] = (byte) v;
+                yuv[uvp + 1] = (byte) (((uvp - width * height) % width) >> 1);
+            }
+            ImageProcessing.decodeYUV420SPtoRGB(yuv, width, height, 2, rgb);
+            for (int y = 0; y < VALUES; y++) {
+                for (int x = 0; x < VALUES; x++) {
+                    int expected = referenceRGB(y, x, v);
+                    if (rgb[y * VALUES + x] != expected) {
+                        assertEquals("Y=" + y + " U=" + x + " V=" + v, expected, rgb[y * VALUES + x]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void oddWidthDecodeMatchesReference() {
+        // the last pixel of an odd-width row has a VU pair of its own
+        final int width = 7;
+        final int height = 6;
+        byte[] yuv = new byte[ImageProcessing.getYUV420SPSize(width, height)];
+        new Random(5).nextBytes(yuv);
+        int[] rgb = ImageProcessing.decodeYUV420SPtoRGB(yuv, width, height, new int[width * height]);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int uvp = width * height + (y >> 1) * width + (x & ~1);
+                int expected = referenceRGB(0xff & yuv[y * width + x], 0xff & yuv[uvp + 1], 0xff & yuv[uvp]);
+                assertEquals("x=" + x + " y=" + y, expected, rgb[y * width + x]);
+            }
+        }
+    }
+}
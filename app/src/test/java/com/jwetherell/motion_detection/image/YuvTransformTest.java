@@ -0,0 +1,143 @@
+package com.jwetherell.motion_detection.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the index arithmetic of the YUV420SP rotate and crop methods, using
+ * images in which every Y value and every VU pair is different, so that any
+ * misplaced (or swapped) sample shows.
+ */
+public class YuvTransformTest {
+
+    private static final int WIDTH = 12;
+    private static final int HEIGHT = 8;
+
+    private static int y(int x, int y) {
+        return (y * 16 + x) & 0xff;
+    }
+
+    private static int v(int cx, int cy) {
+        return 0x80 | (cy << 3) | cx;
+    }
+
+    private static int u(int cx, int cy) {
+        return 0x40 | (cy << 3) | cx;
+    }
+
+    private static byte[] pattern(int width, int height) {
+        byte[] image = new byte[ImageProcessing.getYUV420SPSize(width, height)];
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                image[j * width + i] = (byte) y(i, j);
+            }
+        }
+        for (int cy = 0, o = width * height; cy < height / 2; cy++) {
+            for (int cx = 0; cx < width / 2; cx++, o += 2) {
+                image[o] = (byte) v(cx, cy);
+                image[o + 1] = (byte) u(cx, cy);
+            }
+        }
+        return image;
+    }
+
+    private static int lumaAt(byte[] image, int width, int x, int y) {
+        return 0xff & image[y * width + x];
+    }
+
+    // Returns the V and U of the pair covering pixel (x, y)
+    private static int[] chromaAt(byte[] image, int width, int height, int x, int y) {
+        int o = width * height + (y / 2) * width + (x / 2) * 2;
+        return new int[] { 0xff & image[o], 0xff & image[o + 1] };
+    }
+
+    private static byte[] rotate(byte[] image, int width, int height, int degrees) {
+        return ImageProcessing.rotateYUV420SP(image, width, height, degrees, new byte[image.length]);
+    }
+
+    @Test
+    public void rotate90MovesEveryPixelClockwise() {
+        byte[] image = pattern(WIDTH, HEIGHT);
+        byte[] rotated = rotate(image, WIDTH, HEIGHT, 90);
+        // The rotated image is HEIGHT wide; source pixel (x, y) moves to (HEIGHT - 1 - y, x)
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                int rx = HEIGHT - 1 - j;
+                int ry = i;
+                assertEquals(y(i, j), lumaAt(rotated, HEIGHT, rx, ry));
+                assertArrayEquals(chromaAt(image, WIDTH, HEIGHT, i, j), chromaAt(rotated, HEIGHT, WIDTH, rx, ry));
+            }
+        }
+    }
+
+    @Test
+    public void rotate90FourTimesIsIdentity() {
+        byte[] image = pattern(WIDTH, HEIGHT);
+        byte[] rotated = image;
+        int width = WIDTH;
+        int height = HEIGHT;
+        for (int i = 0; i < 4; i++) {
+            rotated = rotate(rotated, width, height, 90);
+            int swap = width;
+            width = height;
+            height = swap;
+        }
+        assertArrayEquals(image, rotated);
+    }
+
+    @Test
+    public void rotate180IsRotate90Twice() {
+        byte[] image = pattern(WIDTH, HEIGHT);
+        byte[] twice = rotate(rotate(image, WIDTH, HEIGHT, 90), HEIGHT, WIDTH, 90);
+        assertArrayEquals(twice, rotate(image, WIDTH, HEIGHT, 180));
+    }
+
+    @Test
+    public void rotate270IsRotate90ThreeTimes() {
+        byte[] image = pattern(WIDTH, HEIGHT);
+        byte[] thrice = rotate(rotate(rotate(image, WIDTH, HEIGHT, 90), HEIGHT, WIDTH, 90), WIDTH, HEIGHT, 90);
+        assertArrayEquals(thrice, rotate(image, WIDTH, HEIGHT, 270));
+        assertArrayEquals(thrice, rotate(image, WIDTH, HEIGHT, -90));
+    }
+
+    // Offsets of 2 and 6 are even but not multiples of 4, so they start part
+    // way through a row of VU pairs
+    @Test
+    public void cropKeepsChromaAligned() {
+        byte[] image = pattern(WIDTH, HEIGHT);
+        final int left = 2;
+        final int top = 6;
+        final int cropWidth = 6;
+        final int cropHeight = 2;
+        byte[] cropped = ImageProcessing.cropYUV420SP(image, WIDTH, HEIGHT, left, top, cropWidth, cropHeight,
+                new byte[ImageProcessing.getYUV420SPSize(cropWidth, cropHeight)]);
+        for (int j = 0; j < cropHeight; j++) {
+            for (int i = 0; i < cropWidth; i++) {
+                assertEquals(y(left + i, top + j), lumaAt(cropped, cropWidth, i, j));
+                assertArrayEquals(new int[] { v((left + i) / 2, (top + j) / 2), u((left + i) / 2, (top + j) / 2) },
+                        chromaAt(cropped, cropWidth, cropHeight, i, j));
+            }
+        }
+    }
+
+    @Test
+    public void cropWholeImageIsCopy() {
+        byte[] image = pattern(WIDTH, HEIGHT);
+        assertArrayEquals(image,
+                ImageProcessing.cropYUV420SP(image, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, new byte[image.length]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cropAtOddLeftRejected() {
+        byte[] image = pattern(WIDTH, HEIGHT);
+        ImageProcessing.cropYUV420SP(image, WIDTH, HEIGHT, 1, 2, 4, 4, new byte[image.length]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cropAtOddTopRejected() {
+        byte[] image = pattern(WIDTH, HEIGHT);
+        ImageProcessing.cropYUV420SP(image, WIDTH, HEIGHT, 2, 3, 4, 4, new byte[image.length]);
+    }
+}
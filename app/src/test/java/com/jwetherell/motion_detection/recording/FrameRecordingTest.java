@@ -0,0 +1,168 @@
+package com.jwetherell.motion_detection.recording;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.jwetherell.motion_detection.detection.IMotionDetection;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that frames recorded by {@link FrameRecorder} are replayed intact by
+ * {@link FrameReplay}, including after a recording has been interrupted.
+ */
+public class FrameRecordingTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 10;
+    private static final int FRAME_LENGTH = WIDTH * HEIGHT * 3 / 2;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static byte[] frame(int index) {
+        byte[] frame = new byte[FRAME_LENGTH];
+        Arrays.fill(frame, (byte) (index * 10 + 1));
+        return frame;
+    }
+
+    private static void record(File file, int first, int count) throws IOException {
+        FrameRecorder recorder = new FrameRecorder(file, Long.MAX_VALUE);
+        try {
+            for (int i = first; i < first + count; i++) {
+                assertTrue(recorder.record(frame(i), WIDTH, HEIGHT, 1000 + i));
+            }
+        } finally {
+            recorder.close();
+        }
+    }
+
+    // Read every frame, checking its size, and return the first byte and
+    // timestamp of each one
+    private static List<Long> readAll(File file) throws IOException {
+        List<Long> frames = new ArrayList<Long>();
+        FrameReplay replay = new FrameReplay(file);
+        try {
+            while (replay.next()) {
+                assertEquals(WIDTH, replay.getWidth());
+                assertEquals(HEIGHT, replay.getHeight());
+                assertEquals(FRAME_LENGTH, replay.getLength());
+                byte[] data = Arrays.copyOf(replay.getFrame(), replay.getLength());
+                assertArrayEquals(frame((data[0] - 1) / 10), data);
+                assertEquals(1000 + (data[0] - 1) / 10, replay.getTimestamp());
+                frames.add(replay.getTimestamp());
+            }
+        } finally {
+            replay.close();
+        }
+        return frames;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = mFolder.newFile();
+        record(file, 0, 3);
+        record(file, 3, 2); // Appends to the existing recording
+
+        assertEquals(Arrays.asList(1000L, 1001L, 1002L, 1003L, 1004L), readAll(file));
+
+        FrameReplay replay = new FrameReplay(file);
+        try {
+            final List<Integer> sizes = new ArrayList<Integer>();
+            int motionFrames = replay.replay(new IMotionDetection() {
+                @Override
+                public int[] getPrevious() {
+                    return null;
+                }
+
+                @Override
+                public boolean detect(int[] data, int width, int height) {
+                    return false;
+                }
+
+                @Override
+                public boolean detect(byte[] data, int width, int height) {
+                    sizes.add(width * height);
+                    return data[0] == frame(2)[0];
+                }
+            }, null);
+            assertEquals(1, motionFrames);
+            assertEquals(5, sizes.size());
+        } finally {
+            replay.close();
+        }
+    }
+
+    @Test
+    public void appendingAfterTornTailDropsOnlyThePartialFrame() throws IOException {
+        File file = mFolder.newFile();
+        record(file, 0, 3);
+        RandomAccessFile torn = new RandomAccessFile(file, "rw");
+        try {
+            torn.setLength(torn.length() - 100); // Cut into the third frame's data
+        } finally {
+            torn.close();
+        }
+        record(file, 3, 3);
+
+        assertEquals(Arrays.asList(1000L, 1001L, 1003L, 1004L, 1005L), readAll(file));
+    }
+
+    @Test
+    public void replayStopsAtInvalidRecord() throws IOException {
+        File file = mFolder.newFile();
+        record(file, 0, 3);
+        FileOutputStream garbage = new FileOutputStream(file, true);
+        try {
+            garbage.write(new byte[1000]); // Looks like records of length 0
+        } finally {
+            garbage.close();
+        }
+
+        assertEquals(Arrays.asList(1000L, 1001L, 1002L), readAll(file));
+    }
+
+    @Test
+    public void recorderReplacesFileThatIsNotARecording() throws IOException {
+        File file = mFolder.newFile();
+        FileOutputStream other = new FileOutputStream(file);
+        try {
+            other.write("not a recording".getBytes("UTF-8"));
+        } finally {
+            other.close();
+        }
+        record(file, 0, 2);
+
+        assertEquals(Arrays.asList(1000L, 1001L), readAll(file));
+        assertEquals(FrameRecorder.HEADER_SIZE + 2 * (FrameRecorder.RECORD_HEADER_SIZE + FRAME_LENGTH),
+                file.length());
+    }
+
+    @Test
+    public void recorderStopsAtMaximumSize() throws IOException {
+        File file = mFolder.newFile();
+        FrameRecorder recorder = new FrameRecorder(file,
+                FrameRecorder.HEADER_SIZE + FrameRecorder.RECORD_HEADER_SIZE + FRAME_LENGTH);
+        try {
+            assertTrue(recorder.record(frame(0), WIDTH, HEIGHT, 1000));
+            assertFalse(recorder.record(frame(1), WIDTH, HEIGHT, 1001));
+            assertEquals(1, recorder.getFrameCount());
+        } finally {
+            recorder.close();
+        }
+
+        assertEquals(Arrays.asList(1000L), readAll(file));
+    }
+}
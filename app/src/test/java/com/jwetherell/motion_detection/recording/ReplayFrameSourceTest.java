@@ -0,0 +1,142 @@
+package com.jwetherell.motion_detection.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.jwetherell.motion_detection.source.FrameSource;
+import com.jwetherell.motion_detection.source.LumaFrame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that {@link ReplayFrameSource} hands out a recording's frames like a
+ * camera would: dropping frames while every frame is held, and rejecting
+ * frames that are released twice or belong to another source.
+ */
+public class ReplayFrameSourceTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 10;
+    private static final int FRAME_COUNT = 6;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private FrameReplay mReplay;
+    private ReplayFrameSource mSource;
+    private final List<LumaFrame> mHeld = new ArrayList<LumaFrame>();
+    private final List<Integer> mValues = new ArrayList<Integer>();
+
+    private final FrameSource.Listener mListener = new FrameSource.Listener() {
+        @Override
+        public void onFrame(LumaFrame frame) {
+            mHeld.add(frame);
+            mValues.add(frame.getPlane().get(frame.getPlane().position()) & 0xff);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        File file = mFolder.newFile();
+        FrameRecorder recorder = new FrameRecorder(file, Long.MAX_VALUE);
+        try {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+                Arrays.fill(frame, (byte) (i + 1));
+                assertTrue(recorder.record(frame, WIDTH, HEIGHT, 1000 + i));
+            }
+        } finally {
+            recorder.close();
+        }
+        mReplay = new FrameReplay(file);
+        mSource = new ReplayFrameSource(mReplay, 2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mReplay.close();
+    }
+
+    @Test
+    public void dropsFramesWhileAllAreHeld() {
+        mSource.start(mListener);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(mSource.deliverNext());
+        }
+        assertEquals(Arrays.asList(1, 2), mValues);
+        assertEquals(2, mSource.getDroppedFrameCount());
+
+        // Releasing a frame lets the next one through
+        mHeld.remove(0).release();
+        assertTrue(mSource.deliverNext());
+        assertEquals(Arrays.asList(1, 2, 5), mValues);
+        assertEquals(2, mSource.getDroppedFrameCount());
+        assertEquals(1004, mHeld.get(1).getTimestamp());
+        assertEquals(WIDTH, mHeld.get(1).getRowStride());
+
+        mHeld.remove(0).release();
+        mHeld.remove(0).release();
+        assertTrue(mSource.deliverNext());
+        assertFalse(mSource.deliverNext()); // End of the recording
+        assertEquals(Arrays.asList(1, 2, 5, 6), mValues);
+    }
+
+    @Test
+    public void restartsFromTheBeginning() {
+        mSource.start(mListener);
+        assertTrue(mSource.deliverNext());
+        mHeld.remove(0).release();
+        mSource.start(mListener);
+        assertTrue(mSource.deliverNext());
+        assertEquals(Arrays.asList(1, 1), mValues);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseTwiceThrows() {
+        mSource.start(mListener);
+        assertTrue(mSource.deliverNext());
+        LumaFrame frame = mHeld.remove(0);
+        frame.release();
+        frame.release();
+    }
+
+    @Test
+    public void foreignFrameThrows() {
+        LumaFrame frame = new LumaFrame(new LumaFrame.Owner() {
+            @Override
+            public void release(LumaFrame frame) {
+            }
+        });
+        try {
+            mSource.release(frame);
+            fail("Released a frame from another source");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void stoppedSourceDeliversNothing() {
+        assertFalse(mSource.deliverNext()); // Not started yet
+        mSource.start(mListener);
+        assertTrue(mSource.deliverNext());
+        mSource.stop();
+        assertFalse(mSource.deliverNext());
+        assertEquals(1, mValues.size());
+
+        // Frames still held can be released after stopping
+        mHeld.remove(0).release();
+    }
+}
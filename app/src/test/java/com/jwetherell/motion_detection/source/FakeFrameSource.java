@@ -0,0 +1,148 @@
+package com.jwetherell.motion_detection.source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is an in-memory {@link FrameSource} for tests. It delivers the
+ * Y planes of a fixed list of YUV420SP frames as a camera would: each frame
+ * is copied into one of a few reused buffers, with padding after every row
+ * and before the plane starts, so that readers which ignore the row stride or
+ * the buffer's position see the wrong pixels. Frames are only delivered when
+ * {@link #deliverNext()} is called, on the calling thread.
+ */
+public class FakeFrameSource implements FrameSource, LumaFrame.Owner {
+
+    private static final int mPlaneOffset = 3; // Bytes before each plane starts
+    private static final byte mPadding = (byte) 0xA5;
+
+    private final byte[][] mYuvFrames;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mRowStride;
+    private final LumaFrame[] mFrames;
+    private final ByteBuffer[] mBuffers;
+    private final boolean[] mHeld;
+
+    private Listener mListener = null;
+    private int mNextFrame = 0;
+    private int mDroppedFrames = 0;
+
+    /**
+     * Create a source for a list of frames.
+     *
+     * @param yuvFrames
+     *            YUV420SP frames to deliver, in order.
+     * @param width
+     *            Width of each frame.
+     * @param height
+     *            Height of each frame.
+     * @param rowStride
+     *            Distance in bytes between the start of each row; at least
+     *            the width.
+     * @param frameCount
+     *            Number of frames that the listener may hold at once.
+     * @param direct
+     *            True to use direct buffers (as a Camera2 Image plane does),
+     *            rather than heap buffers.
+     */
+    public FakeFrameSource(byte[][] yuvFrames, int width, int height, int rowStride, int frameCount, boolean direct) {
+        if (yuvFrames == null) throw new NullPointerException();
+        if (rowStride < width) throw new IllegalArgumentException("Row stride is smaller than the width");
+        if (frameCount < 1) throw new IllegalArgumentException("At least one frame is required");
+
+        mYuvFrames = yuvFrames;
+        mWidth = width;
+        mHeight = height;
+        mRowStride = rowStride;
+        mFrames = new LumaFrame[frameCount];
+        mBuffers = new ByteBuffer[frameCount];
+        mHeld = new boolean[frameCount];
+        int capacity = mPlaneOffset + rowStride * height;
+        for (int i = 0; i < frameCount; i++) {
+            mFrames[i] = new LumaFrame(this);
+            mBuffers[i] = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+    }
+
+    /**
+     * Start delivering frames from the first one. {@inheritDoc}
+     */
+    @Override
+    public synchronized void start(Listener listener) {
+        if (listener == null) throw new NullPointerException();
+
+        mListener = listener;
+        mNextFrame = 0;
+        mDroppedFrames = 0;
+    }
+
+    @Override
+    public synchronized void stop() {
+        mListener = null;
+    }
+
+    /**
+     * Deliver the next frame to the listener, if it has a frame free.
+     *
+     * @return True if a frame was read (whether or not it was dropped); false
+     *         after the last frame, or if the source is stopped.
+     */
+    public boolean deliverNext() {
+        Listener listener;
+        LumaFrame frame = null;
+        synchronized (this) {
+            listener = mListener;
+            if (listener == null || mNextFrame >= mYuvFrames.length) return false;
+
+            byte[] yuv = mYuvFrames[mNextFrame++];
+            for (int i = 0; i < mFrames.length; i++) {
+                if (!mHeld[i]) {
+                    mHeld[i] = true;
+                    copyLuma(yuv, mBuffers[i]);
+                    frame = mFrames[i];
+                    frame.set(mBuffers[i], mRowStride, mWidth, mHeight, mNextFrame);
+                    break;
+                }
+            }
+            if (frame == null) {
+                mDroppedFrames++;
+                return true;
+            }
+        }
+        listener.onFrame(frame);
+        return true;
+    }
+
+    private void copyLuma(byte[] yuv, ByteBuffer buffer) {
+        buffer.clear();
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, mPadding);
+        }
+        for (int y = 0; y < mHeight; y++) {
+            buffer.position(mPlaneOffset + y * mRowStride);
+            buffer.put(yuv, y * mWidth, mWidth);
+        }
+        buffer.position(mPlaneOffset);
+    }
+
+    @Override
+    public synchronized void release(LumaFrame frame) {
+        for (int i = 0; i < mFrames.length; i++) {
+            if (mFrames[i] == frame) {
+                if (!mHeld[i]) throw new IllegalStateException("Frame released twice");
+                mHeld[i] = false;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Frame does not belong to this source");
+    }
+
+    /**
+     * Get the number of frames dropped because the listener held every frame.
+     *
+     * @return int number of dropped frames.
+     */
+    public synchronized int getDroppedFrameCount() {
+        return mDroppedFrames;
+    }
+}
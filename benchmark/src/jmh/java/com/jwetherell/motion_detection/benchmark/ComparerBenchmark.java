@@ -0,0 +1,87 @@
+package com.jwetherell.motion_detection.benchmark;
+
+import com.jwetherell.motion_detection.detection.BlockComparer;
+import com.jwetherell.motion_detection.detection.Comparer;
+import com.jwetherell.motion_detection.detection.State;
+import com.jwetherell.motion_detection.image.ImageProcessing;
+import com.jwetherell.motion_detection.image.IntegralImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time (per frame) and allocation of block aggregation: the original
+ * State/Comparer pair, the reusable BlockComparer, and BlockComparer reading
+ * from a summed-area table, at several grid sizes.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ComparerBenchmark {
+
+    @Param({ "640x480", "1280x720" })
+    public String size;
+
+    @Param({ "10", "32", "64" })
+    public int grid;
+
+    private int mWidth;
+    private int mHeight;
+    private int[][] mLuma;
+    private int mFrameIndex = 0;
+    private State mPreviousState;
+    private BlockComparer mBlockComparer;
+    private BlockComparer mIntegralComparer;
+    private IntegralImage mIntegralImage;
+
+    @Setup
+    public void setup() {
+        int[] dimensions = Frames.parseSize(size);
+        mWidth = dimensions[0];
+        mHeight = dimensions[1];
+        byte[][] frames = Frames.create(mWidth, mHeight, 2, true);
+        mLuma = new int[frames.length][];
+        for (int i = 0; i < frames.length; i++) {
+            mLuma[i] = ImageProcessing.decodeYUV420SPtoLuma(frames[i], mWidth, mHeight);
+        }
+
+        mPreviousState = new State(mLuma[1], mWidth, mHeight);
+        mBlockComparer = new BlockComparer(grid, grid, 10, 0);
+        mBlockComparer.configure(mWidth, mHeight);
+        mIntegralComparer = new BlockComparer(grid, grid, 10, 0);
+        mIntegralComparer.configure(mWidth, mHeight);
+        mIntegralImage = new IntegralImage();
+    }
+
+    private int[] nextFrame() {
+        int[] luma = mLuma[mFrameIndex];
+        mFrameIndex = 1 - mFrameIndex;
+        return luma;
+    }
+
+    @Benchmark
+    public boolean stateComparer() {
+        State state = new State(nextFrame(), mWidth, mHeight);
+        boolean different = new Comparer(state, mPreviousState, grid, grid, 10, 0).isDifferent();
+        mPreviousState = state;
+        return different;
+    }
+
+    @Benchmark
+    public boolean blockComparer() {
+        return mBlockComparer.update(nextFrame());
+    }
+
+    @Benchmark
+    public boolean integralComparer() {
+        mIntegralImage.build(nextFrame(), mWidth, mHeight);
+        return mIntegralComparer.update(mIntegralImage);
+    }
+}
@@ -0,0 +1,88 @@
+package com.jwetherell.motion_detection.benchmark;
+
+import com.jwetherell.motion_detection.image.ImageProcessing;
+import com.jwetherell.motion_detection.image.ParallelFrameProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time (per frame) and allocation of the ImageProcessing NV21 decode paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodeBenchmark {
+
+    @Param({ "320x240", "640x480", "1280x720", "1920x1080" })
+    public String size;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mFrame;
+    private int[] mOutput;
+    private int[] mSampledOutput;
+    private int mSampleFactor;
+    private ParallelFrameProcessor mProcessor;
+
+    @Setup
+    public void setup() {
+        int[] dimensions = Frames.parseSize(size);
+        mWidth = dimensions[0];
+        mHeight = dimensions[1];
+        mFrame = Frames.create(mWidth, mHeight, 1, true)[0];
+        mOutput = new int[mWidth * mHeight];
+        mSampleFactor = ImageProcessing.getSampleFactor(mWidth, mHeight, 160 * 120);
+        mSampledOutput = new int[ImageProcessing.getSampledSize(mWidth, mSampleFactor)
+                * ImageProcessing.getSampledSize(mHeight, mSampleFactor)];
+        mProcessor = new ParallelFrameProcessor(320 * 240);
+    }
+
+    @Benchmark
+    public int[] lumaAllocating() {
+        return ImageProcessing.decodeYUV420SPtoLuma(mFrame, mWidth, mHeight);
+    }
+
+    @Benchmark
+    public int[] luma() {
+        return ImageProcessing.decodeYUV420SPtoLuma(mFrame, mWidth, mHeight, mOutput);
+    }
+
+    @Benchmark
+    public int[] lumaParallel() {
+        return ImageProcessing.decodeYUV420SPtoLuma(mFrame, mWidth, mHeight, mOutput, mProcessor);
+    }
+
+    @Benchmark
+    public int[] lumaSampled() {
+        return ImageProcessing.decodeYUV420SPtoLuma(mFrame, mWidth, mHeight, mSampleFactor, mSampledOutput);
+    }
+
+    @Benchmark
+    public int[] rgbAllocating() {
+        return ImageProcessing.decodeYUV420SPtoRGB(mFrame, mWidth, mHeight);
+    }
+
+    @Benchmark
+    public int[] rgb() {
+        return ImageProcessing.decodeYUV420SPtoRGB(mFrame, mWidth, mHeight, mOutput);
+    }
+
+    @Benchmark
+    public int[] rgbParallel() {
+        return ImageProcessing.decodeYUV420SPtoRGB(mFrame, mWidth, mHeight, mOutput, mProcessor);
+    }
+
+    @Benchmark
+    public int[] rgbSampled() {
+        return ImageProcessing.decodeYUV420SPtoRGB(mFrame, mWidth, mHeight, mSampleFactor, mSampledOutput);
+    }
+}
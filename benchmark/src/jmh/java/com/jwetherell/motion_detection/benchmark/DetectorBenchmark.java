@@ -0,0 +1,77 @@
+package com.jwetherell.motion_detection.benchmark;
+
+import com.jwetherell.motion_detection.detection.AggregateLumaMotionDetection;
+import com.jwetherell.motion_detection.detection.BackgroundMotionDetection;
+import com.jwetherell.motion_detection.detection.IMotionDetection;
+import com.jwetherell.motion_detection.detection.LumaMotionDetection;
+import com.jwetherell.motion_detection.detection.PyramidMotionDetection;
+import com.jwetherell.motion_detection.detection.RgbMotionDetection;
+import com.jwetherell.motion_detection.detection.YuvLumaMotionDetection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time (per frame) and allocation of each motion detector, fed NV21 preview
+ * frames of a moving or static synthetic scene.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DetectorBenchmark {
+
+    private static final int FRAME_COUNT = 4; // a typical number of camera preview buffers
+
+    @Param({ "320x240", "640x480", "1280x720" })
+    public String size;
+
+    @Param({ "moving", "static" })
+    public String scene;
+
+    @Param({ "luma", "lumaDecisionOnly", "rgb", "aggregate", "yuvLuma", "yuvLumaSampled", "yuvLumaPacked",
+            "background", "pyramid" })
+    public String detector;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[][] mFrames;
+    private int mFrameIndex = 0;
+    private IMotionDetection mDetector;
+
+    static IMotionDetection createDetector(String name) {
+        if ("luma".equals(name)) return new LumaMotionDetection();
+        if ("lumaDecisionOnly".equals(name)) return new LumaMotionDetection(50, 10000, true, null);
+        if ("rgb".equals(name)) return new RgbMotionDetection();
+        if ("aggregate".equals(name)) return new AggregateLumaMotionDetection();
+        if ("yuvLuma".equals(name)) return new YuvLumaMotionDetection();
+        if ("yuvLumaSampled".equals(name)) return new YuvLumaMotionDetection(160 * 120);
+        if ("yuvLumaPacked".equals(name)) return new YuvLumaMotionDetection(0, null, true);
+        if ("background".equals(name)) return new BackgroundMotionDetection();
+        if ("pyramid".equals(name)) return new PyramidMotionDetection();
+        throw new IllegalArgumentException("Unknown detector: " + name);
+    }
+
+    @Setup
+    public void setup() {
+        int[] dimensions = Frames.parseSize(size);
+        mWidth = dimensions[0];
+        mHeight = dimensions[1];
+        mFrames = Frames.create(mWidth, mHeight, FRAME_COUNT, "moving".equals(scene));
+        mDetector = createDetector(detector);
+    }
+
+    @Benchmark
+    public boolean detect() {
+        byte[] frame = mFrames[mFrameIndex];
+        mFrameIndex = (mFrameIndex + 1) % FRAME_COUNT;
+        return mDetector.detect(frame, mWidth, mHeight);
+    }
+}
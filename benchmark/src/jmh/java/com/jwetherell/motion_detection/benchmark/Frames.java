@@ -0,0 +1,76 @@
+package com.jwetherell.motion_detection.benchmark;
+
+import com.jwetherell.motion_detection.image.ImageProcessing;
+
+import java.util.Random;
+
+/**
+ * Synthetic NV21 frames for the benchmarks: a noisy, textured background with
+ * a bright square that moves between frames, so detectors see both static
+ * and changing areas, as they would with a camera.
+ */
+final class Frames {
+
+    private Frames() {
+    }
+
+    /**
+     * Parse a preview size parameter.
+     *
+     * @param size
+     *            String of the form "640x480".
+     * @return int array of width and height.
+     */
+    static int[] parseSize(String size) {
+        int separator = size.indexOf('x');
+        return new int[] { Integer.parseInt(size.substring(0, separator)),
+                Integer.parseInt(size.substring(separator + 1)) };
+    }
+
+    /**
+     * Create a sequence of frames.
+     *
+     * @param width
+     *            Width of each frame.
+     * @param height
+     *            Height of each frame.
+     * @param count
+     *            Number of frames.
+     * @param moving
+     *            True to move a square between frames; false for a static
+     *            scene with only sensor noise.
+     * @return array of NV21 frames.
+     */
+    static byte[][] create(int width, int height, int count, boolean moving) {
+        Random random = new Random(42);
+        int frameSize = width * height;
+        int[] background = new int[frameSize];
+        for (int y = 0, yp = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, yp++) {
+                background[yp] = 64 + ((x / 16 + y / 16) % 2) * 64;
+            }
+        }
+
+        byte[][] frames = new byte[count][ImageProcessing.getYUV420SPSize(width, height)];
+        int squareSize = Math.max(8, Math.min(width, height) / 4);
+        for (int f = 0; f < count; f++) {
+            byte[] frame = frames[f];
+            for (int i = 0; i < frameSize; i++) {
+                frame[i] = (byte) (background[i] + random.nextInt(5) - 2);
+            }
+            for (int i = frameSize; i < frame.length; i++) {
+                frame[i] = (byte) (128 + random.nextInt(5) - 2);
+            }
+            if (moving) {
+                int left = (f * squareSize / 2) % (width - squareSize);
+                int top = (height - squareSize) / 2;
+                for (int y = top; y < top + squareSize; y++) {
+                    for (int x = left, yp = y * width + left; x < left + squareSize; x++, yp++) {
+                        frame[yp] = (byte) 230;
+                    }
+                }
+            }
+        }
+        return frames;
+    }
+}
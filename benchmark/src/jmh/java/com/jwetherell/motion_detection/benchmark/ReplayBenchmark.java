@@ -0,0 +1,61 @@
+package com.jwetherell.motion_detection.benchmark;
+
+import com.jwetherell.motion_detection.detection.IMotionDetection;
+import com.jwetherell.motion_detection.recording.FrameReplay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time (per frame) and allocation of each motion detector on frames recorded
+ * on a device with FrameRecorder. The recording is given by the
+ * motion.recording system property (-Precording=... when run with Gradle), and
+ * is replayed in a loop, one frame per invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReplayBenchmark {
+
+    @Param({ "luma", "lumaDecisionOnly", "rgb", "aggregate", "yuvLuma", "yuvLumaSampled", "yuvLumaPacked",
+            "background", "pyramid" })
+    public String detector;
+
+    private FrameReplay mReplay;
+    private IMotionDetection mDetector;
+
+    @Setup
+    public void setup() throws IOException {
+        String recording = System.getProperty("motion.recording");
+        if (recording == null) throw new IllegalStateException("Set motion.recording to a recorded frames file");
+
+        mReplay = new FrameReplay(new File(recording));
+        if (mReplay.getFrameCount() == 0) throw new IllegalStateException("Recording has no frames");
+        mDetector = DetectorBenchmark.createDetector(detector);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mReplay.close();
+    }
+
+    @Benchmark
+    public boolean detect() {
+        if (!mReplay.next()) {
+            mReplay.seek(0);
+            mReplay.next();
+        }
+        return mDetector.detect(mReplay.getFrame(), mReplay.getWidth(), mReplay.getHeight());
+    }
+}